@@ -0,0 +1,91 @@
+package ch.mitjakurath.klar.config;
+
+import ch.mitjakurath.klar.util.JwtUtil;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.ServletException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One request through {@link JwtAuthenticationFilter}, with the user lookup
+ * stubbed out so that only the filter's own work is measured. With
+ * {@code tokenCacheSize} 0 every request verifies its token.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JwtAuthenticationFilterBenchmark {
+
+    private static final String SECRET = "benchmark-secret-benchmark-secret-benchmark-secret";
+    private static final String USER_ID = "64b7f0c2e4b0a1a2b3c4d5e6";
+
+    @Param({"0", "10000"})
+    private long tokenCacheSize;
+
+    private JwtAuthenticationFilter filter;
+    private String authorization;
+
+    @Setup
+    public void setUp() {
+        JwtUtil jwtUtil = new JwtUtil(SECRET, 86400000L);
+        JwtPrincipalCache jwtPrincipalCache = new JwtPrincipalCache(
+                jwtUtil, new SimpleMeterRegistry(), tokenCacheSize, Duration.ofMinutes(10));
+        UserDetails user = new User(USER_ID, "", List.of());
+        UserDetailsService userDetailsService = username -> user;
+
+        filter = new JwtAuthenticationFilter();
+        ReflectionTestUtils.setField(filter, "jwtPrincipalCache", jwtPrincipalCache);
+        ReflectionTestUtils.setField(filter, "userDetailsService", userDetailsService);
+        authorization = "Bearer " + jwtUtil.generateToken(USER_ID);
+    }
+
+    @Benchmark
+    public Object authenticated() throws ServletException, IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/tasks");
+        request.addHeader("Authorization", authorization);
+        try {
+            filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+        } finally {
+            // as SecurityContextHolderFilter does at the end of a request
+            SecurityContextHolder.clearContext();
+        }
+        return request.getAttribute(JwtAuthenticationFilter.CLAIMS_ATTRIBUTE);
+    }
+
+    @Benchmark
+    public Object anonymous() throws ServletException, IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/tasks");
+        try {
+            filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+        } finally {
+            // as SecurityContextHolderFilter does at the end of a request
+            SecurityContextHolder.clearContext();
+        }
+        return request.getAttribute(JwtAuthenticationFilter.CLAIMS_ATTRIBUTE);
+    }
+}
@@ -0,0 +1,97 @@
+package ch.mitjakurath.klar.dto;
+
+import ch.mitjakurath.klar.model.PomodoroSession;
+import ch.mitjakurath.klar.util.SparseFields;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Binding of session write bodies. {@code startMap} replays the former
+ * binding of the start body to a map and casting its values, {@code startRecord}
+ * and {@code updateRecord} bind the typed requests, and {@code updateEntity}
+ * the former binding of updates to the document class. Run with
+ * {@code -PjmhArgs="RequestBinding -prof gc"} to compare allocation per request.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestBindingBenchmark {
+
+    private static final byte[] START = """
+            {"duration":25,"type":"work","taskId":"64b7f0c2e4b0a1a2b3c4d5e6"}"""
+            .getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] UPDATE = """
+            {"taskId":"64b7f0c2e4b0a1a2b3c4d5e6","duration":25,"type":"work","completed":false,\
+            "startTime":"2025-03-01T09:00:00","endTime":null,"createdAt":"2025-03-01T09:00:00"}"""
+            .getBytes(StandardCharsets.UTF_8);
+
+    @Param({"reflection", "blackbird"})
+    private String access;
+
+    private ObjectReader mapReader;
+    private ObjectReader startReader;
+    private ObjectReader updateReader;
+    private ObjectReader entityReader;
+
+    @Setup
+    public void setUp() {
+        Jackson2ObjectMapperBuilder builder = Jackson2ObjectMapperBuilder.json().filters(SparseFields.allFields());
+        if ("blackbird".equals(access)) {
+            builder.modulesToInstall(new BlackbirdModule());
+        }
+        ObjectMapper objectMapper = builder.build();
+        mapReader = objectMapper.readerFor(new TypeReference<Map<String, Object>>() {});
+        startReader = objectMapper.readerFor(SessionStartRequest.class);
+        updateReader = objectMapper.readerFor(SessionRequest.class);
+        entityReader = objectMapper.readerFor(PomodoroSession.class);
+    }
+
+    @Benchmark
+    public int startMap() throws IOException {
+        Map<String, Object> body = mapReader.readValue(START);
+        int duration = (Integer) body.get("duration");
+        String type = (String) body.get("type");
+        String taskId = (String) body.get("taskId");
+        return duration + type.length() + taskId.length();
+    }
+
+    @Benchmark
+    public int startRecord() throws IOException {
+        SessionStartRequest body = startReader.readValue(START);
+        return body.duration() + body.type().length() + body.taskId().length();
+    }
+
+    @Benchmark
+    public PomodoroSession updateEntity() throws IOException {
+        return entityReader.readValue(UPDATE);
+    }
+
+    @Benchmark
+    public PomodoroSession updateRecord() throws IOException {
+        SessionRequest body = updateReader.readValue(UPDATE);
+        return body.toSession("64b7f0c2e4b0a1a2b3c4d5e7", "64b7f0c2e4b0a1a2b3c4d5e8");
+    }
+}
@@ -0,0 +1,128 @@
+package ch.mitjakurath.klar.model;
+
+import ch.mitjakurath.klar.util.SparseFields;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.json.MappingJacksonValue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Serialization of list responses in each negotiable format. {@code size}
+ * spans a fresh account, a default page and a heavy user's legacy unpaged
+ * list. The mappers are built the way the application builds its own.
+ * {@code tasksGzip} adds the compression done by the server for responses
+ * above the size threshold; the encoded sizes are printed once per trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+
+    private static final String USER_ID = "64b7f0c2e4b0a1a2b3c4d5e6";
+
+    @Param({"10", "50", "1000"})
+    private int size;
+
+    @Param({"json", "cbor", "smile"})
+    private String format;
+
+    private ObjectMapper objectMapper;
+    private ObjectWriter sparseWriter;
+    private List<Task> tasks;
+    private List<PomodoroSession> sessions;
+
+    @Setup
+    public void setUp() {
+        // Boot turns timestamps off, so dates are sent as ISO strings rather than arrays
+        Jackson2ObjectMapperBuilder builder = Jackson2ObjectMapperBuilder.json()
+                .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .modulesToInstall(new BlackbirdModule())
+                .filters(SparseFields.allFields());
+        objectMapper = switch (format) {
+            case "cbor" -> builder.factory(new CBORFactory()).build();
+            case "smile" -> builder.factory(new SmileFactory()).build();
+            default -> builder.build();
+        };
+        MappingJacksonValue sparse = SparseFields.select(List.of(), Set.of("title", "completed"));
+        sparseWriter = objectMapper.writer(sparse.getFilters());
+
+        LocalDateTime now = LocalDateTime.now();
+        tasks = new ArrayList<>(size);
+        sessions = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Task task = new Task(USER_ID, "Task " + i);
+            task.setId(String.format("%024x", i));
+            task.setDescription("Description of task " + i);
+            task.setPriority(i % 3 == 0 ? "high" : "medium");
+            task.setDueDate(now.plusDays(i % 14));
+            task.setCompleted(i % 4 == 0);
+            tasks.add(task);
+
+            PomodoroSession session = new PomodoroSession(USER_ID, 25, i % 4 == 3 ? "break" : "work");
+            session.setId(String.format("%024x", size + i));
+            session.setTaskId(task.getId());
+            session.setCompleted(true);
+            sessions.add(session);
+        }
+
+        try {
+            System.out.printf("%n%s, %d tasks: %d bytes, %d gzipped; %d sessions: %d bytes%n",
+                    format, size, tasks().length, tasksGzip().length, size, sessions().length);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Benchmark
+    public byte[] tasks() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(tasks);
+    }
+
+    @Benchmark
+    public byte[] tasksSparse() throws JsonProcessingException {
+        return sparseWriter.writeValueAsBytes(tasks);
+    }
+
+    @Benchmark
+    public byte[] tasksGzip() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+            objectMapper.writeValue(gzip, tasks);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] sessions() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(sessions);
+    }
+}
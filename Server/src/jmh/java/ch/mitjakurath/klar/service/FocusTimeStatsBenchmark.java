@@ -0,0 +1,109 @@
+package ch.mitjakurath.klar.service;
+
+import ch.mitjakurath.klar.model.PomodoroSession;
+import ch.mitjakurath.klar.repository.PomodoroSessionRepositoryCustom.DayTotal;
+import ch.mitjakurath.klar.repository.PomodoroSessionRepositoryCustom.FocusTimeAggregate;
+import ch.mitjakurath.klar.repository.PomodoroSessionRepositoryCustom.TypeTotal;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Focus-time reduction for a month of sessions. {@code legacyStreamReduction}
+ * replays the former in-memory path, which filtered the fetched sessions
+ * twice; {@code shapeAggregate} is what is left on the server now that Mongo
+ * groups the sessions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FocusTimeStatsBenchmark {
+
+    @Param({"30", "300", "3000"})
+    private int sessionsPerMonth;
+
+    private List<PomodoroSession> sessions;
+    private FocusTimeAggregate aggregate;
+
+    @Setup
+    public void setUp() {
+        LocalDateTime start = LocalDateTime.now().minusDays(29);
+        sessions = new ArrayList<>(sessionsPerMonth);
+        for (int i = 0; i < sessionsPerMonth; i++) {
+            PomodoroSession session = new PomodoroSession("user", i % 4 == 3 ? 5 : 25, i % 4 == 3 ? "break" : "work");
+            session.setStartTime(start.plusMinutes((long) i * 30 * 24 * 60 / sessionsPerMonth));
+            session.setCompleted(i % 10 != 0);
+            sessions.add(session);
+        }
+
+        Map<String, long[]> byType = new HashMap<>();
+        Map<String, long[]> byDay = new TreeMap<>();
+        for (PomodoroSession session : sessions) {
+            if (!session.isCompleted()) {
+                continue;
+            }
+            long[] type = byType.computeIfAbsent(session.getType(), key -> new long[2]);
+            type[0] += session.getDuration();
+            type[1]++;
+            if ("work".equals(session.getType())) {
+                long[] day = byDay.computeIfAbsent(session.getStartTime().toLocalDate().toString(), key -> new long[2]);
+                day[0] += session.getDuration();
+                day[1]++;
+            }
+        }
+        aggregate = new FocusTimeAggregate(
+                byType.entrySet().stream()
+                        .map(e -> new TypeTotal(e.getKey(), e.getValue()[0], e.getValue()[1]))
+                        .collect(Collectors.toList()),
+                byDay.entrySet().stream()
+                        .map(e -> new DayTotal(e.getKey(), e.getValue()[0], e.getValue()[1]))
+                        .collect(Collectors.toList())
+        );
+    }
+
+    @Benchmark
+    public Map<String, Object> legacyStreamReduction() {
+        Map<String, Object> stats = new HashMap<>();
+
+        int totalMinutes = sessions.stream()
+                .filter(PomodoroSession::isCompleted)
+                .filter(s -> "work".equals(s.getType()))
+                .mapToInt(PomodoroSession::getDuration)
+                .sum();
+
+        long completedSessions = sessions.stream()
+                .filter(PomodoroSession::isCompleted)
+                .filter(s -> "work".equals(s.getType()))
+                .count();
+
+        stats.put("totalMinutes", totalMinutes);
+        stats.put("completedSessions", completedSessions);
+        stats.put("period", "month");
+        return stats;
+    }
+
+    @Benchmark
+    public Map<String, Object> shapeAggregate() {
+        return PomodoroSessionService.focusTimeStats("month", aggregate);
+    }
+}
@@ -0,0 +1,200 @@
+package ch.mitjakurath.klar.load;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+
+/**
+ * Drives a running Klar server with a fixed number of concurrent clients and reports throughput and
+ * p50/p99 latency per endpoint. Run it once against the server started normally and once with
+ * {@code --spring.profiles.active=virtual-threads} to compare the two execution modes:
+ * <pre>
+ * gradle loadTest -PloadTestArgs="--base-url=http://localhost:8080 --token=... --concurrency=500 --duration=PT30S"
+ * </pre>
+ * All clients share the user of the token, so start the server with {@code --app.rate-limit.enabled=false}.
+ * {@link LoadHarness} uses the same driver against a server it starts and seeds itself.
+ */
+public class LoadDriver {
+
+    static final List<String> DEFAULT_ENDPOINTS = List.of(
+            "GET /api/tasks",
+            "GET /api/tasks/stats",
+            "GET /api/sessions/today",
+            "GET /api/sessions/focus-time/week"
+    );
+
+    private final HttpClient client;
+    private final String baseUrl;
+    private final Map<String, Recorder> recorders = new ConcurrentHashMap<>();
+
+    public LoadDriver(String baseUrl) {
+        this.baseUrl = baseUrl;
+        this.client = HttpClient.newBuilder()
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parse(args);
+        LoadDriver driver = new LoadDriver(options.getOrDefault("base-url", "http://localhost:8080"));
+        String token = required(options, "token");
+        List<String> endpoints = options.containsKey("endpoints")
+                ? Arrays.asList(options.get("endpoints").split(","))
+                : DEFAULT_ENDPOINTS;
+
+        driver.run(
+                client -> () -> {
+                    String endpoint = endpoints.get(ThreadLocalRandom.current().nextInt(endpoints.size()));
+                    String[] parts = endpoint.split(" ", 2);
+                    driver.send(endpoint, token, parts[0], parts[1], null);
+                },
+                Integer.parseInt(options.getOrDefault("concurrency", "200")),
+                Duration.parse(options.getOrDefault("duration", "PT30S")),
+                Duration.parse(options.getOrDefault("warmup", "PT5S"))
+        );
+    }
+
+    /**
+     * One simulated client. {@link #step} sends the client's next request; clients are only ever used by
+     * one thread, so they may keep state between steps.
+     */
+    public interface Client {
+        void step();
+    }
+
+    /**
+     * Runs {@code concurrency} clients created by {@code clients} until {@code duration} has passed,
+     * discarding everything measured during the warmup, then prints the results.
+     */
+    public void run(IntFunction<Client> clients, int concurrency, Duration duration, Duration warmup)
+            throws InterruptedException {
+        runFor(clients, concurrency, warmup);
+        recorders.clear();
+        long started = System.nanoTime();
+        runFor(clients, concurrency, duration);
+        report(Duration.ofNanos(System.nanoTime() - started));
+    }
+
+    private void runFor(IntFunction<Client> clients, int concurrency, Duration duration) throws InterruptedException {
+        long deadline = System.nanoTime() + duration.toNanos();
+        try (ExecutorService threads = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < concurrency; i++) {
+                Client client = clients.apply(i);
+                threads.execute(() -> {
+                    while (System.nanoTime() < deadline) {
+                        client.step();
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Sends a request and records its latency under {@code endpoint}.
+     *
+     * @return the response, or {@code null} if the request failed without one
+     */
+    public HttpResponse<String> send(String endpoint, String token, String method, String path, String json) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .header("Authorization", "Bearer " + token)
+                .timeout(Duration.ofSeconds(30));
+        if (json != null) {
+            builder.header("Content-Type", "application/json")
+                    .method(method, HttpRequest.BodyPublishers.ofString(json));
+        } else {
+            builder.method(method, HttpRequest.BodyPublishers.noBody());
+        }
+        Recorder recorder = recorders.computeIfAbsent(endpoint, key -> new Recorder());
+        long start = System.nanoTime();
+        try {
+            HttpResponse<String> response = client.send(builder.build(), HttpResponse.BodyHandlers.ofString());
+            // a failed request may end in a redirect to the login page rather than an error status
+            int status = response.statusCode();
+            recorder.record(System.nanoTime() - start, status / 100 == 2 || status == 304);
+            return response;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            // counted as an error below
+        }
+        recorder.record(System.nanoTime() - start, false);
+        return null;
+    }
+
+    private void report(Duration elapsed) {
+        System.out.printf("%-40s %10s %10s %10s %10s %8s%n", "endpoint", "requests", "req/s", "p50 ms", "p99 ms", "errors");
+        recorders.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .forEach(entry -> {
+                    Recorder recorder = entry.getValue();
+                    long[] latencies = recorder.sorted();
+                    System.out.printf("%-40s %10d %10.1f %10.2f %10.2f %8d%n",
+                            entry.getKey(),
+                            latencies.length,
+                            latencies.length / (elapsed.toNanos() / 1e9),
+                            percentile(latencies, 0.50) / 1e6,
+                            percentile(latencies, 0.99) / 1e6,
+                            recorder.errors.get());
+                });
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(percentile * sorted.length) - 1)];
+    }
+
+    public static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --name=value but got " + arg);
+            }
+            int separator = arg.indexOf('=');
+            options.put(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+        return options;
+    }
+
+    static String required(Map<String, String> options, String name) {
+        String value = options.get(name);
+        if (value == null) {
+            throw new IllegalArgumentException("Missing --" + name);
+        }
+        return value;
+    }
+
+    private static final class Recorder {
+
+        // lock-free, so that clients running on virtual threads never block on a monitor
+        private final Queue<Long> latencies = new ConcurrentLinkedQueue<>();
+        private final AtomicLong errors = new AtomicLong();
+
+        void record(long nanos, boolean ok) {
+            latencies.add(nanos);
+            if (!ok) {
+                errors.incrementAndGet();
+            }
+        }
+
+        long[] sorted() {
+            return latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+        }
+    }
+}
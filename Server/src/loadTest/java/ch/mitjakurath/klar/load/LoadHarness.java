@@ -0,0 +1,186 @@
+package ch.mitjakurath.klar.load;
+
+import ch.mitjakurath.klar.Application;
+import ch.mitjakurath.klar.model.PomodoroSession;
+import ch.mitjakurath.klar.model.Task;
+import ch.mitjakurath.klar.model.User;
+import ch.mitjakurath.klar.service.DailyStatsService;
+import ch.mitjakurath.klar.util.JwtUtil;
+import de.bwaldvogel.mongo.MongoServer;
+import de.bwaldvogel.mongo.backend.memory.MemoryBackend;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Starts the server against an in-process Mongo stand-in, seeds users with a history of tasks and
+ * sessions and drives it with {@link MixedTraffic}, reporting throughput and p50/p99 latency per endpoint:
+ * <pre>
+ * gradle loadHarness -PloadHarnessArgs="--users=50 --concurrency=200 --duration=PT60S"
+ * </pre>
+ * Options: {@code --users}, {@code --tasks-per-user}, {@code --sessions-per-user}, {@code --days},
+ * {@code --seed}, {@code --concurrency}, {@code --duration}, {@code --warmup}, {@code --mix} and
+ * {@code --mongo-uri}. Any other {@code --name=value} is passed on to the server, e.g.
+ * {@code --spring.profiles.active=virtual-threads}.
+ * <p>
+ * The stand-in keeps runs reproducible and is fine for comparing builds, but it is far slower than
+ * mongod and does not support update pipelines, so toggles are left out of the default mix on it. Point
+ * {@code --mongo-uri} at an empty database on a real server to size a deployment.
+ */
+public class LoadHarness {
+
+    private static final String[] PRIORITIES = {"high", "medium", "medium", "low"};
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = LoadDriver.parse(args);
+        int users = Integer.parseInt(remove(options, "users", "50"));
+        int tasksPerUser = Integer.parseInt(remove(options, "tasks-per-user", "200"));
+        int sessionsPerUser = Integer.parseInt(remove(options, "sessions-per-user", "400"));
+        int days = Integer.parseInt(remove(options, "days", "60"));
+        long seed = Long.parseLong(remove(options, "seed", "42"));
+        int concurrency = Integer.parseInt(remove(options, "concurrency", "100"));
+        Duration duration = Duration.parse(remove(options, "duration", "PT30S"));
+        Duration warmup = Duration.parse(remove(options, "warmup", "PT10S"));
+        String mixOption = options.remove("mix");
+        String mongoUri = options.remove("mongo-uri");
+
+        MongoServer standIn = null;
+        if (mongoUri == null) {
+            standIn = new MongoServer(new MemoryBackend());
+            standIn.bind();
+            mongoUri = standIn.getConnectionString() + "/klar-load";
+        }
+
+        Map<MixedTraffic.Action, Integer> mix = mixOption != null
+                ? MixedTraffic.parseMix(mixOption)
+                : MixedTraffic.defaultMix();
+        if (standIn != null && mixOption == null) {
+            mix.remove(MixedTraffic.Action.TOGGLE);
+        }
+
+        Map<String, String> serverOptions = new HashMap<>();
+        serverOptions.put("server.port", "0");
+        serverOptions.put("management.server.port", "0");
+        serverOptions.put("spring.data.mongodb.uri", mongoUri);
+        serverOptions.put("app.jwt.secret", UUID.randomUUID() + "-" + UUID.randomUUID());
+        serverOptions.put("logging.level.org.springframework.security", "INFO");
+        // a few seeded users send far more than a real client would
+        serverOptions.put("app.rate-limit.enabled", "false");
+        for (String provider : List.of("github", "google")) {
+            serverOptions.put("spring.security.oauth2.client.registration." + provider + ".client-id", "load-test");
+            serverOptions.put("spring.security.oauth2.client.registration." + provider + ".client-secret", "load-test");
+        }
+        serverOptions.putAll(options);
+
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(Application.class)
+                .run(serverOptions.entrySet().stream()
+                        .map(option -> "--" + option.getKey() + "=" + option.getValue())
+                        .toArray(String[]::new));
+        try {
+            System.out.printf("Seeding %d users with %d tasks and %d sessions each%n", users, tasksPerUser, sessionsPerUser);
+            List<MixedTraffic.SeededUser> seeded = seed(context, new Random(seed), users, tasksPerUser, sessionsPerUser, days);
+
+            int port = context.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+            LoadDriver driver = new LoadDriver("http://localhost:" + port);
+            MixedTraffic traffic = new MixedTraffic(seeded, mix);
+            System.out.printf("Running %d clients for %s after a %s warmup, mix %s%n", concurrency, duration, warmup, mix);
+            driver.run(index -> traffic.client(driver, index), concurrency, duration, warmup);
+        } finally {
+            context.close();
+            if (standIn != null) {
+                standIn.shutdownNow();
+            }
+        }
+        // the stand-in's event loop threads are not daemons and outlive shutdownNow
+        System.exit(0);
+    }
+
+    /**
+     * Inserts the users and their histories directly, bypassing the API, and issues a token per user.
+     */
+    static List<MixedTraffic.SeededUser> seed(
+            ConfigurableApplicationContext context,
+            Random random,
+            int users,
+            int tasksPerUser,
+            int sessionsPerUser,
+            int days
+    ) {
+        MongoTemplate mongoTemplate = context.getBean(MongoTemplate.class);
+        JwtUtil jwtUtil = context.getBean(JwtUtil.class);
+        DailyStatsService dailyStatsService = context.getBean(DailyStatsService.class);
+        if (mongoTemplate.estimatedCount(User.class) > 0) {
+            throw new IllegalStateException(
+                    "Database " + mongoTemplate.getDb().getName() + " is not empty; use a scratch database");
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        List<MixedTraffic.SeededUser> seeded = new ArrayList<>(users);
+        for (int u = 0; u < users; u++) {
+            User user = mongoTemplate.insert(new User("load" + u + "@klar.test", "Load " + u, "github", "load-" + u));
+
+            List<Task> tasks = new ArrayList<>(tasksPerUser);
+            for (int t = 0; t < tasksPerUser; t++) {
+                Task task = new Task(user.getId(), "Task " + t);
+                if (random.nextBoolean()) {
+                    task.setDescription("Notes for task " + t);
+                }
+                task.setPriority(PRIORITIES[random.nextInt(PRIORITIES.length)]);
+                LocalDateTime createdAt = now.minusMinutes(random.nextInt(days * 24 * 60));
+                task.setCreatedAt(createdAt);
+                task.setUpdatedAt(createdAt);
+                if (random.nextInt(10) < 6) {
+                    LocalDateTime completedAt = createdAt.plusMinutes(random.nextInt(3 * 24 * 60));
+                    task.setCompleted(true);
+                    task.setCompletedAt(completedAt.isAfter(now) ? now : completedAt);
+                    task.setUpdatedAt(task.getCompletedAt());
+                }
+                if (random.nextBoolean()) {
+                    task.setDueDate(LocalDate.now().plusDays(random.nextInt(29) - 14).atStartOfDay());
+                }
+                tasks.add(task);
+            }
+            List<String> taskIds = mongoTemplate.insertAll(tasks).stream().map(Task::getId).toList();
+
+            List<PomodoroSession> sessions = new ArrayList<>(sessionsPerUser);
+            for (int s = 0; s < sessionsPerUser; s++) {
+                boolean work = s % 4 != 3;
+                PomodoroSession session = new PomodoroSession(user.getId(), work ? 25 : 5, work ? "work" : "break");
+                LocalDateTime startTime = now.minusMinutes(random.nextInt(days * 24 * 60));
+                session.setStartTime(startTime);
+                session.setCreatedAt(startTime);
+                session.setUpdatedAt(startTime);
+                if (work && !taskIds.isEmpty()) {
+                    session.setTaskId(taskIds.get(random.nextInt(taskIds.size())));
+                }
+                if (random.nextInt(10) < 9) {
+                    session.setEndTime(startTime.plusMinutes(session.getDuration()));
+                    session.setCompleted(true);
+                }
+                sessions.add(session);
+            }
+            mongoTemplate.insertAll(sessions);
+
+            if (dailyStatsService.isEnabled()) {
+                dailyStatsService.rebuild(user.getId());
+            }
+            seeded.add(new MixedTraffic.SeededUser(jwtUtil.generateToken(user.getId()), taskIds));
+        }
+        return seeded;
+    }
+
+    private static String remove(Map<String, String> options, String name, String defaultValue) {
+        String value = options.remove(name);
+        return value != null ? value : defaultValue;
+    }
+}
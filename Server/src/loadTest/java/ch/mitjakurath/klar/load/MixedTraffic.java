@@ -0,0 +1,136 @@
+package ch.mitjakurath.klar.load;
+
+import java.net.http.HttpResponse;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The traffic of logged-in clients: every client keeps using the token of its user, creates, edits and
+ * deletes its own tasks, toggles seeded ones and polls the stats endpoints. The share of each action is
+ * set with {@code --mix=list:15,create:10,...}; actions that are not listed are not sent.
+ */
+final class MixedTraffic {
+
+    enum Action {
+        LIST("GET /api/tasks?limit=50", 15),
+        CREATE("POST /api/tasks", 10),
+        UPDATE("PUT /api/tasks/{id}", 5),
+        DELETE("DELETE /api/tasks/{id}", 5),
+        TOGGLE("PATCH /api/tasks/{id}/toggle", 15),
+        STATS("GET /api/tasks/stats", 20),
+        FOCUS("GET /api/sessions/focus-time/month", 20),
+        TODAY("GET /api/sessions/today", 10);
+
+        final String endpoint;
+        final int defaultWeight;
+
+        Action(String endpoint, int defaultWeight) {
+            this.endpoint = endpoint;
+            this.defaultWeight = defaultWeight;
+        }
+    }
+
+    /** A seeded user, the token its clients reuse and the ids of its seeded tasks. */
+    record SeededUser(String token, List<String> taskIds) {}
+
+    private static final Pattern ID = Pattern.compile("\"id\"\\s*:\\s*\"([^\"]+)\"");
+
+    private final List<SeededUser> users;
+    private final Action[] actions;
+    private final int[] cumulativeWeights;
+
+    MixedTraffic(List<SeededUser> users, Map<Action, Integer> mix) {
+        this.users = users;
+        this.actions = mix.keySet().toArray(Action[]::new);
+        this.cumulativeWeights = new int[actions.length];
+        int total = 0;
+        for (int i = 0; i < actions.length; i++) {
+            total += mix.get(actions[i]);
+            cumulativeWeights[i] = total;
+        }
+        if (total == 0) {
+            throw new IllegalArgumentException("The mix does not contain any action");
+        }
+    }
+
+    static Map<Action, Integer> defaultMix() {
+        Map<Action, Integer> mix = new EnumMap<>(Action.class);
+        for (Action action : Action.values()) {
+            mix.put(action, action.defaultWeight);
+        }
+        return mix;
+    }
+
+    /**
+     * Parses {@code list:15,create:10,...}.
+     */
+    static Map<Action, Integer> parseMix(String mix) {
+        Map<Action, Integer> weights = new EnumMap<>(Action.class);
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.split(":", 2);
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Expected action:weight but got " + entry);
+            }
+            weights.put(Action.valueOf(parts[0].trim().toUpperCase(Locale.ROOT)), Integer.parseInt(parts[1].trim()));
+        }
+        return weights;
+    }
+
+    LoadDriver.Client client(LoadDriver driver, int index) {
+        SeededUser user = users.get(index % users.size());
+        Deque<String> createdTaskIds = new ArrayDeque<>();
+
+        return () -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            Action action = next(random);
+            if ((action == Action.UPDATE || action == Action.DELETE) && createdTaskIds.isEmpty()
+                    || action == Action.TOGGLE && user.taskIds().isEmpty()) {
+                action = Action.CREATE;
+            }
+
+            switch (action) {
+                case CREATE -> {
+                    HttpResponse<String> response = driver.send(action.endpoint, user.token(), "POST", "/api/tasks",
+                            "{\"title\":\"Load test task\",\"priority\":\"high\"}");
+                    String id = response != null && response.statusCode() == 200 ? id(response.body()) : null;
+                    if (id != null) {
+                        createdTaskIds.add(id);
+                    }
+                }
+                case UPDATE -> driver.send(action.endpoint, user.token(), "PUT", "/api/tasks/" + createdTaskIds.peekLast(),
+                        "{\"title\":\"Edited load test task\",\"description\":\"edited\",\"priority\":\"low\"}");
+                case DELETE -> driver.send(action.endpoint, user.token(), "DELETE", "/api/tasks/" + createdTaskIds.pollFirst(), null);
+                case TOGGLE -> {
+                    String id = user.taskIds().get(random.nextInt(user.taskIds().size()));
+                    driver.send(action.endpoint, user.token(), "PATCH", "/api/tasks/" + id + "/toggle", null);
+                }
+                default -> {
+                    String[] parts = action.endpoint.split(" ", 2);
+                    driver.send(action.endpoint, user.token(), parts[0], parts[1], null);
+                }
+            }
+        };
+    }
+
+    private Action next(ThreadLocalRandom random) {
+        int pick = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (int i = 0; i < actions.length; i++) {
+            if (pick < cumulativeWeights[i]) {
+                return actions[i];
+            }
+        }
+        throw new IllegalStateException();
+    }
+
+    private static String id(String json) {
+        Matcher matcher = ID.matcher(json);
+        return matcher.find() ? matcher.group(1) : null;
+    }
+}
@@ -0,0 +1,26 @@
+package ch.mitjakurath.klar.config;
+
+import ch.mitjakurath.klar.service.DailyStatsService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Rebuilds all daily stats rollups from the raw task and session collections.
+ * Enable once with {@code app.stats.rollups.rebuild-on-startup=true} before
+ * switching reads over with {@code app.stats.rollups.enabled=true}.
+ */
+@Component
+@ConditionalOnProperty(name = "app.stats.rollups.rebuild-on-startup", havingValue = "true")
+public class DailyStatsRebuildRunner implements ApplicationRunner {
+
+    @Autowired
+    private DailyStatsService dailyStatsService;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        dailyStatsService.rebuildAll();
+    }
+}
@@ -0,0 +1,120 @@
+package ch.mitjakurath.klar.config;
+
+import ch.mitjakurath.klar.util.SparseFields;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import java.util.List;
+import java.util.Map;
+import org.reactivestreams.Publisher;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.jackson.Jackson2ObjectMapperBuilderCustomizer;
+import org.springframework.boot.web.codec.CodecCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.cbor.Jackson2CborDecoder;
+import org.springframework.http.codec.cbor.Jackson2CborEncoder;
+import org.springframework.http.codec.json.Jackson2SmileDecoder;
+import org.springframework.http.codec.json.Jackson2SmileEncoder;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.util.MimeType;
+import reactor.core.publisher.Flux;
+
+/**
+ * Besides JSON, responses are available as CBOR ({@code Accept: application/cbor}) and Smile
+ * ({@code Accept: application/x-jackson-smile}). Both are binary, so they are smaller and cheaper to write
+ * than JSON, and Smile also writes each repeated field name once per response instead of once per element,
+ * which suits long task and session lists. They use mappers built like the JSON one, so sparse field selection
+ * and date formats are the same.
+ */
+@Configuration
+public class JacksonConfiguration {
+
+    private static final MediaType SMILE = new MediaType("application", "x-jackson-smile");
+
+    /**
+     * Boot adds module beans to the application's builder, so every mapper gets it. Blackbird replaces
+     * reflective getter, setter and constructor calls with generated lambdas.
+     */
+    @Bean
+    BlackbirdModule blackbirdModule() {
+        return new BlackbirdModule();
+    }
+
+    @Bean
+    Jackson2ObjectMapperBuilderCustomizer sparseFieldsCustomizer() {
+        return builder -> builder.filters(SparseFields.allFields());
+    }
+
+    @Bean
+    MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(ObjectProvider<Jackson2ObjectMapperBuilder> builder) {
+        return new MappingJackson2CborHttpMessageConverter(cborMapper(builder));
+    }
+
+    @Bean
+    MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter(ObjectProvider<Jackson2ObjectMapperBuilder> builder) {
+        return new MappingJackson2SmileHttpMessageConverter(smileMapper(builder));
+    }
+
+    @Bean
+    CodecCustomizer binaryCodecsCustomizer(ObjectProvider<Jackson2ObjectMapperBuilder> builder) {
+        return configurer -> {
+            // built from a mapper, these codecs default to the JSON types unless given their own
+            ObjectMapper smile = smileMapper(builder);
+            configurer.defaultCodecs().jackson2SmileEncoder(new Jackson2SmileEncoder(smile, SMILE));
+            configurer.defaultCodecs().jackson2SmileDecoder(new Jackson2SmileDecoder(smile, SMILE));
+            ObjectMapper cbor = cborMapper(builder);
+            configurer.customCodecs().register(new ExplicitCborEncoder(cbor));
+            configurer.customCodecs().register(new Jackson2CborDecoder(cbor, MediaType.APPLICATION_CBOR));
+        };
+    }
+
+    /**
+     * The application's builder is a prototype with all customizations applied, so each call gets a fresh one.
+     */
+    private static ObjectMapper cborMapper(ObjectProvider<Jackson2ObjectMapperBuilder> builder) {
+        return builder.getObject().factory(new CBORFactory()).build();
+    }
+
+    private static ObjectMapper smileMapper(ObjectProvider<Jackson2ObjectMapperBuilder> builder) {
+        return builder.getObject().factory(new SmileFactory()).build();
+    }
+
+    /**
+     * Custom codecs come before the JSON one, and the functional endpoints write with the first codec that
+     * accepts the response's content type, so this one only accepts a content type that was set to CBOR (see
+     * {@code Handlers.conditional}). Streams are written as one array, which Spring's CBOR encoder does not do.
+     */
+    private static class ExplicitCborEncoder extends Jackson2CborEncoder {
+
+        ExplicitCborEncoder(ObjectMapper mapper) {
+            super(mapper, MediaType.APPLICATION_CBOR);
+        }
+
+        @Override
+        public boolean canEncode(ResolvableType elementType, MimeType mimeType) {
+            return mimeType != null && super.canEncode(elementType, mimeType);
+        }
+
+        @Override
+        public Flux<DataBuffer> encode(
+                Publisher<?> inputStream,
+                DataBufferFactory bufferFactory,
+                ResolvableType elementType,
+                MimeType mimeType,
+                Map<String, Object> hints
+        ) {
+            ResolvableType listType = ResolvableType.forClassWithGenerics(List.class, elementType);
+            return Flux.from(inputStream).collectList()
+                    .map(items -> encodeValue(items, bufferFactory, listType, mimeType, hints))
+                    .flux();
+        }
+    }
+}
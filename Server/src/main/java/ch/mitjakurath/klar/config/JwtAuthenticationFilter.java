@@ -1,7 +1,7 @@
 package ch.mitjakurath.klar.config;
 
 import ch.mitjakurath.klar.service.UserService;
-import ch.mitjakurath.klar.util.JwtUtil;
+import io.jsonwebtoken.Claims;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -9,6 +9,7 @@ import jakarta.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.util.Collections;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -19,10 +20,13 @@ import org.springframework.util.StringUtils;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 @Component
+@Profile("!reactive")
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
+    public static final String CLAIMS_ATTRIBUTE = "ch.mitjakurath.klar.jwt.claims";
+
     @Autowired
-    private JwtUtil jwtUtil;
+    private JwtPrincipalCache jwtPrincipalCache;
 
     @Autowired
     private UserDetailsService userDetailsService;
@@ -36,10 +40,10 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         try {
             String jwt = getJwtFromRequest(request);
 
-            if (StringUtils.hasText(jwt) && jwtUtil.validateToken(jwt)) {
-                String userId = jwtUtil.getUserIdFromToken(jwt);
+            Claims claims = StringUtils.hasText(jwt) ? jwtPrincipalCache.getClaims(jwt) : null;
 
-                UserDetails userDetails = userDetailsService.loadUserByUsername(userId);
+            if (claims != null) {
+                UserDetails userDetails = userDetailsService.loadUserByUsername(claims.getSubject());
                 UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(
                         userDetails,
                         null,
@@ -50,6 +54,7 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
                 );
 
                 SecurityContextHolder.getContext().setAuthentication(authentication);
+                request.setAttribute(CLAIMS_ATTRIBUTE, claims);
             }
         } catch (Exception ex) {
             logger.error("Could not set user authentication in security context", ex);
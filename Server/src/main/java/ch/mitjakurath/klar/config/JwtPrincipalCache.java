@@ -0,0 +1,111 @@
+package ch.mitjakurath.klar.config;
+
+import ch.mitjakurath.klar.util.JwtUtil;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Caches the claims of already verified tokens, keyed by the SHA-256 digest of
+ * the token. Entries never outlive the token's own expiration.
+ */
+@Component
+public class JwtPrincipalCache {
+
+    private final JwtUtil jwtUtil;
+    private final Cache<String, Claims> tokens;
+    private final Timer validVerifications;
+    private final Timer invalidVerifications;
+
+    public JwtPrincipalCache(
+            JwtUtil jwtUtil,
+            MeterRegistry meterRegistry,
+            @Value("${app.auth.token-cache.max-size:10000}") long maxSize,
+            @Value("${app.auth.token-cache.ttl:PT10M}") Duration ttl
+    ) {
+        this.jwtUtil = jwtUtil;
+        this.tokens = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new TokenExpiry(ttl))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, tokens, "jwt.tokens");
+        this.validVerifications = verificationTimer(meterRegistry, "valid");
+        this.invalidVerifications = verificationTimer(meterRegistry, "invalid");
+    }
+
+    /**
+     * Returns the verified claims of the token, or {@code null} if the token is
+     * invalid or expired. Invalid tokens are never cached.
+     */
+    public Claims getClaims(String token) {
+        return tokens.get(digest(token), key -> {
+            long start = System.nanoTime();
+            try {
+                Claims claims = jwtUtil.verify(token);
+                validVerifications.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                return claims;
+            } catch (JwtException | IllegalArgumentException e) {
+                invalidVerifications.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                return null;
+            }
+        });
+    }
+
+    private static Timer verificationTimer(MeterRegistry meterRegistry, String outcome) {
+        return Timer.builder("klar.jwt.verifications")
+                .description("Signature and expiry checks of tokens missing from the cache")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    private static String digest(String token) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256")
+                    .digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private record TokenExpiry(Duration ttl) implements Expiry<String, Claims> {
+
+        @Override
+        public long expireAfterCreate(String key, Claims claims, long currentTime) {
+            long ttlNanos = ttl.toNanos();
+            Date expiration = claims.getExpiration();
+            if (expiration == null) {
+                return ttlNanos;
+            }
+            long remaining = Duration.ofMillis(
+                    expiration.getTime() - System.currentTimeMillis()
+            ).toNanos();
+            return Math.max(0, Math.min(ttlNanos, remaining));
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, Claims claims, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, claims, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, Claims claims, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package ch.mitjakurath.klar.config;
+
+import org.springframework.boot.web.context.WebServerInitializedEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Remembers the port of the management server, which serves the actuator endpoints when
+ * {@code management.server.port} differs from the API port. The security configurations only open
+ * {@code /actuator/prometheus} on that port, which is meant to be reachable from inside the cluster only;
+ * without a separate management server it requires authentication like the API.
+ */
+@Component
+public class ManagementPort implements ApplicationListener<WebServerInitializedEvent> {
+
+    public static final String PROMETHEUS = "/actuator/prometheus";
+
+    private volatile int port = -1;
+
+    @Override
+    public void onApplicationEvent(WebServerInitializedEvent event) {
+        // the management server's context publishes to this one as its parent
+        if ("management".equals(event.getApplicationContext().getServerNamespace())) {
+            port = event.getWebServer().getPort();
+        }
+    }
+
+    public boolean matches(int localPort) {
+        return port != -1 && localPort == port;
+    }
+}
@@ -0,0 +1,175 @@
+package ch.mitjakurath.klar.config;
+
+import com.mongodb.MongoClientSettings;
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.stereotype.Component;
+
+/**
+ * Complements the driver timers Spring Boot records as {@code mongodb.driver.commands} with the number of
+ * documents each command returned or wrote ({@code klar.mongodb.documents}) and reports commands slower
+ * than {@code app.metrics.mongo.slow-command-threshold}: they are counted in {@code klar.mongodb.slow.commands}
+ * and logged with the shape of their filter or pipeline, never with its values. Queries are also handed to the
+ * {@link QueryPlanInspector}, which explains each shape once in a while.
+ */
+@Component
+public class MongoCommandMetrics implements CommandListener, MongoClientSettingsBuilderCustomizer {
+
+    private static final Logger logger = LoggerFactory.getLogger(MongoCommandMetrics.class);
+    private static final int MAX_SHAPE_LENGTH = 500;
+
+    private final MeterRegistry meterRegistry;
+    private final QueryPlanInspector queryPlanInspector;
+    private final long slowThresholdNanos;
+    private final Map<Integer, Started> started = new ConcurrentHashMap<>();
+
+    public MongoCommandMetrics(
+            MeterRegistry meterRegistry,
+            QueryPlanInspector queryPlanInspector,
+            @Value("${app.metrics.mongo.slow-command-threshold:PT0.1S}") Duration slowThreshold
+    ) {
+        this.meterRegistry = meterRegistry;
+        this.queryPlanInspector = queryPlanInspector;
+        this.slowThresholdNanos = slowThreshold.toNanos();
+    }
+
+    @Override
+    public void customize(MongoClientSettings.Builder settings) {
+        settings.addCommandListener(this);
+    }
+
+    @Override
+    public void commandStarted(CommandStartedEvent event) {
+        // the command document is only valid during this call, so take what is needed now
+        BsonDocument command = event.getCommand();
+        String name = event.getCommandName();
+        BsonValue target = "getMore".equals(name) ? command.get("collection") : command.get(name);
+        String collection = target != null && target.isString() ? target.asString().getValue() : "none";
+        String shape = shape(command);
+        started.put(event.getRequestId(), new Started(collection, shape));
+        queryPlanInspector.sample(name, collection, shape, command);
+    }
+
+    @Override
+    public void commandSucceeded(CommandSucceededEvent event) {
+        Started command = started.remove(event.getRequestId());
+        if (command == null) {
+            return;
+        }
+        long documents = documents(event.getCommandName(), event.getResponse());
+        if (documents >= 0) {
+            DistributionSummary.builder("klar.mongodb.documents")
+                    .description("Documents returned or written by a Mongo command")
+                    .tag("command", event.getCommandName())
+                    .tag("collection", command.collection())
+                    .register(meterRegistry)
+                    .record(documents);
+        }
+        reportIfSlow(event.getCommandName(), command, event.getElapsedTime(TimeUnit.NANOSECONDS), documents);
+    }
+
+    @Override
+    public void commandFailed(CommandFailedEvent event) {
+        Started command = started.remove(event.getRequestId());
+        if (command != null) {
+            reportIfSlow(event.getCommandName(), command, event.getElapsedTime(TimeUnit.NANOSECONDS), -1);
+        }
+    }
+
+    private void reportIfSlow(String name, Started command, long elapsedNanos, long documents) {
+        if (elapsedNanos < slowThresholdNanos) {
+            return;
+        }
+        Counter.builder("klar.mongodb.slow.commands")
+                .description("Mongo commands slower than app.metrics.mongo.slow-command-threshold")
+                .tag("command", name)
+                .tag("collection", command.collection())
+                .register(meterRegistry)
+                .increment();
+        logger.warn("Slow Mongo command {} on {} took {} ms and returned {} documents: {}",
+                name, command.collection(), TimeUnit.NANOSECONDS.toMillis(elapsedNanos), documents, command.shape());
+    }
+
+    /**
+     * Documents in the first or next batch of a cursor, or the count reported by a write; -1 if unknown.
+     */
+    private static long documents(String name, BsonDocument response) {
+        BsonValue cursor = response.get("cursor");
+        if (cursor != null && cursor.isDocument()) {
+            BsonValue batch = cursor.asDocument().get("getMore".equals(name) ? "nextBatch" : "firstBatch");
+            return batch != null && batch.isArray() ? batch.asArray().size() : -1;
+        }
+        if ("findAndModify".equals(name)) {
+            BsonValue value = response.get("value");
+            return value == null || value.isNull() ? 0 : 1;
+        }
+        BsonValue count = response.get("n");
+        return count != null && count.isNumber() ? count.asNumber().longValue() : -1;
+    }
+
+    /**
+     * The filter, sort or pipeline of a command with every value replaced by {@code ?}.
+     */
+    private static String shape(BsonDocument command) {
+        StringBuilder shape = new StringBuilder();
+        for (String key : new String[]{"filter", "query", "sort", "pipeline", "updates", "deletes"}) {
+            BsonValue value = command.get(key);
+            if (value != null) {
+                shape.append(key).append('=');
+                appendShape(shape, value);
+                shape.append(' ');
+            }
+        }
+        return shape.length() > MAX_SHAPE_LENGTH ? shape.substring(0, MAX_SHAPE_LENGTH) + "..." : shape.toString().trim();
+    }
+
+    private static void appendShape(StringBuilder shape, BsonValue value) {
+        if (shape.length() > MAX_SHAPE_LENGTH) {
+            return;
+        }
+        if (value.isDocument()) {
+            shape.append('{');
+            String separator = "";
+            for (Map.Entry<String, BsonValue> entry : value.asDocument().entrySet()) {
+                shape.append(separator).append(entry.getKey()).append(':');
+                appendShape(shape, entry.getValue());
+                separator = ",";
+            }
+            shape.append('}');
+        } else if (value.isArray()) {
+            BsonArray array = value.asArray();
+            shape.append('[');
+            String separator = "";
+            for (BsonValue element : array) {
+                if (!element.isDocument() && !element.isArray()) {
+                    shape.append(separator).append('?');
+                    break;
+                }
+                shape.append(separator);
+                appendShape(shape, element);
+                separator = ",";
+            }
+            shape.append(']');
+        } else {
+            shape.append('?');
+        }
+    }
+
+    private record Started(String collection, String shape) {}
+}
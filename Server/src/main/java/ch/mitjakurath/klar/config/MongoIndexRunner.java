@@ -0,0 +1,263 @@
+package ch.mitjakurath.klar.config;
+
+import ch.mitjakurath.klar.model.PomodoroSession;
+import ch.mitjakurath.klar.model.Task;
+import com.mongodb.MongoCommandException;
+import com.mongodb.MongoException;
+import java.lang.reflect.Method;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ListableBeanFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mapping.context.MappingContext;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.data.mongodb.core.convert.QueryMapper;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentProperty;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.repository.query.ConvertingParameterAccessor;
+import org.springframework.data.mongodb.repository.query.MongoParametersParameterAccessor;
+import org.springframework.data.mongodb.repository.query.MongoQueryMethod;
+import org.springframework.data.mongodb.repository.query.PartTreeMongoQuery;
+import org.springframework.data.mongodb.repository.query.StringBasedMongoQuery;
+import org.springframework.data.projection.SpelAwareProxyProjectionFactory;
+import org.springframework.data.repository.core.RepositoryInformation;
+import org.springframework.data.repository.query.ValueExpressionDelegate;
+import org.springframework.data.repository.support.Repositories;
+import org.springframework.stereotype.Component;
+
+/**
+ * Creates the indexes declared on the mapped documents, then explains the query of every repository query
+ * method with placeholder arguments and reports those whose plan scans a collection or sorts in memory (see
+ * {@link QueryPlanInspector}). Both run on a virtual thread after startup, since Mongo builds indexes without
+ * blocking reads and writes, and stop at the first connection failure. Creating an index that exists is a
+ * no-op, so this is safe on every start; turn it off with {@code app.mongo.ensure-indexes=false} where indexes
+ * are managed elsewhere, and the explain pass with {@code app.mongo.query-plans.check-on-startup=false}.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class MongoIndexRunner implements ApplicationRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(MongoIndexRunner.class);
+    private static final String SAMPLE_ID = "000000000000000000000000";
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private QueryPlanInspector queryPlanInspector;
+
+    @Autowired
+    private ListableBeanFactory beanFactory;
+
+    @Value("${app.mongo.ensure-indexes:true}")
+    private boolean ensureIndexes;
+
+    @Value("${app.mongo.query-plans.check-on-startup:true}")
+    private boolean checkQueryPlans;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!ensureIndexes && !checkQueryPlans) {
+            return;
+        }
+        Thread.ofVirtual().name("mongo-indexes").start(() -> {
+            try {
+                if (ensureIndexes && !ensureIndexes()) {
+                    return;
+                }
+                if (checkQueryPlans) {
+                    checkRepositoryQueries();
+                }
+            } catch (IllegalStateException e) {
+                // the client was closed because the application is shutting down
+                logger.debug("Index check stopped: {}", e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Returns false if Mongo could not be reached.
+     */
+    public boolean ensureIndexes() {
+        MappingContext<? extends MongoPersistentEntity<?>, MongoPersistentProperty> mappingContext =
+                mongoTemplate.getConverter().getMappingContext();
+        MongoPersistentEntityIndexResolver resolver = new MongoPersistentEntityIndexResolver(mappingContext);
+        for (MongoPersistentEntity<?> entity : mappingContext.getPersistentEntities()) {
+            if (!entity.isAnnotationPresent(Document.class)) {
+                continue;
+            }
+            for (IndexDefinition index : resolver.resolveIndexFor(entity.getTypeInformation())) {
+                if (!createIndex(entity.getCollection(), index)) {
+                    return false;
+                }
+            }
+        }
+        // the archives are only listed page by page, and read whole per user by exports and rebuilds
+        Index keyset = new Index().named("userId_createdAt_id")
+                .on("userId", Sort.Direction.ASC)
+                .on("createdAt", Sort.Direction.DESC)
+                .on("_id", Sort.Direction.DESC);
+        for (String archive : List.of(Task.ARCHIVE, PomodoroSession.ARCHIVE)) {
+            if (!createIndex(archive, keyset)) {
+                return false;
+            }
+        }
+        // stats without the rollups count the archived tasks per priority from the index alone
+        Index priority = new Index().named("userId_priority")
+                .on("userId", Sort.Direction.ASC)
+                .on("priority", Sort.Direction.ASC);
+        return createIndex(Task.ARCHIVE, priority);
+    }
+
+    private boolean createIndex(String collection, IndexDefinition index) {
+        try {
+            mongoTemplate.indexOps(collection).createIndex(index);
+        } catch (DataAccessResourceFailureException e) {
+            logger.warn("Could not create indexes: {}", e.getMessage());
+            return false;
+        } catch (DataAccessException e) {
+            // e.g. an existing index with the same keys but other options, or duplicates in a unique key
+            logger.warn("Could not create index {} on {}: {}",
+                    index.getIndexOptions().get("name"), collection, e.getMessage());
+        }
+        return true;
+    }
+
+    public void checkRepositoryQueries() {
+        MongoConverter converter = mongoTemplate.getConverter();
+        QueryMapper queryMapper = new QueryMapper(converter);
+        SpelAwareProxyProjectionFactory projectionFactory = new SpelAwareProxyProjectionFactory();
+        Repositories repositories = new Repositories(beanFactory);
+        int explained = 0;
+        int flagged = 0;
+        for (Class<?> domainType : repositories) {
+            RepositoryInformation repository = repositories.getRequiredRepositoryInformation(domainType);
+            MongoPersistentEntity<?> entity = converter.getMappingContext().getRequiredPersistentEntity(domainType);
+            for (Method method : repository.getQueryMethods()) {
+                String name = repository.getRepositoryInterface().getSimpleName() + "." + method.getName();
+                MongoQueryMethod queryMethod = new MongoQueryMethod(
+                        method, repository, projectionFactory, converter.getMappingContext());
+                if (queryMethod.hasAnnotatedAggregation()) {
+                    continue;
+                }
+                Set<String> problems;
+                try {
+                    Query query = createQuery(queryMethod, sampleArguments(method));
+                    problems = queryPlanInspector.planProblems(new org.bson.Document("find", entity.getCollection())
+                            .append("filter", queryMapper.getMappedObject(query.getQueryObject(), entity))
+                            .append("sort", queryMapper.getMappedSort(query.getSortObject(), entity)));
+                } catch (MongoException | DataAccessException | IllegalArgumentException e) {
+                    if (!queryPlanInspector.isSupported()) {
+                        return;
+                    }
+                    if (e instanceof MongoException && !(e instanceof MongoCommandException)) {
+                        logger.warn("Could not explain repository queries: {}", e.getMessage());
+                        return;
+                    }
+                    logger.debug("Could not explain {}: {}", name, e.getMessage());
+                    continue;
+                }
+                explained++;
+                if (!problems.isEmpty()) {
+                    flagged++;
+                    queryPlanInspector.report("startup", entity.getCollection(), name, problems);
+                }
+            }
+        }
+        logger.info("Explained {} repository queries, {} of them are not covered by an index", explained, flagged);
+    }
+
+    private Query createQuery(MongoQueryMethod method, Object[] arguments) {
+        ConvertingParameterAccessor accessor = new ConvertingParameterAccessor(
+                mongoTemplate.getConverter(), new MongoParametersParameterAccessor(method, arguments));
+        return method.hasAnnotatedQuery()
+                ? new ExplainedStringQuery(method, mongoTemplate).createQuery(accessor)
+                : new ExplainedPartTreeQuery(method, mongoTemplate).createQuery(accessor);
+    }
+
+    /**
+     * Arguments that only need to have the right type: the query is planned, never run.
+     */
+    private static Object[] sampleArguments(Method method) {
+        Class<?>[] types = method.getParameterTypes();
+        Object[] arguments = new Object[types.length];
+        for (int i = 0; i < types.length; i++) {
+            arguments[i] = sampleArgument(types[i]);
+        }
+        return arguments;
+    }
+
+    private static Object sampleArgument(Class<?> type) {
+        if (type == String.class) {
+            return SAMPLE_ID;
+        } else if (type == LocalDateTime.class) {
+            return LocalDateTime.now();
+        } else if (type == LocalDate.class) {
+            return LocalDate.now();
+        } else if (type == boolean.class || type == Boolean.class) {
+            return false;
+        } else if (type == int.class || type == Integer.class) {
+            return 0;
+        } else if (type == long.class || type == Long.class) {
+            return 0L;
+        } else if (type == Limit.class) {
+            return Limit.of(1);
+        } else if (type == Pageable.class) {
+            return PageRequest.of(0, 1);
+        } else if (type == Sort.class) {
+            return Sort.unsorted();
+        } else if (Collection.class.isAssignableFrom(type)) {
+            return List.of();
+        }
+        return null;
+    }
+
+    /** Exposes the query a derived query method would run. */
+    private static final class ExplainedPartTreeQuery extends PartTreeMongoQuery {
+
+        private ExplainedPartTreeQuery(MongoQueryMethod method, MongoOperations operations) {
+            super(method, operations, ValueExpressionDelegate.create());
+        }
+
+        @Override
+        protected Query createQuery(ConvertingParameterAccessor accessor) {
+            return super.createQuery(accessor);
+        }
+    }
+
+    /** Exposes the query an {@code @Query} method would run. */
+    private static final class ExplainedStringQuery extends StringBasedMongoQuery {
+
+        private ExplainedStringQuery(MongoQueryMethod method, MongoOperations operations) {
+            super(method, operations, ValueExpressionDelegate.create());
+        }
+
+        @Override
+        protected Query createQuery(ConvertingParameterAccessor accessor) {
+            return super.createQuery(accessor);
+        }
+    }
+}
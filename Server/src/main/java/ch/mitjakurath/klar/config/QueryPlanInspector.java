@@ -0,0 +1,174 @@
+package ch.mitjakurath.klar.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.mongodb.MongoCommandException;
+import com.mongodb.MongoException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Explains queries with {@code queryPlanner} verbosity, which plans a query without running it, and reports
+ * winning plans that scan a whole collection ({@code COLLSCAN}) or sort in memory ({@code SORT}). Besides
+ * the repository queries checked at startup by {@link MongoIndexRunner}, every find, count, distinct and
+ * aggregate the application sends is explained once per shape and {@code app.mongo.query-plans.sample-interval},
+ * which also covers the hand-written queries of the custom repositories. Problems are counted in
+ * {@code klar.mongodb.unindexed.queries} and logged with the query shape, never with its values.
+ */
+@Component
+public class QueryPlanInspector {
+
+    public static final String COLLECTION_SCAN = "COLLSCAN";
+    public static final String IN_MEMORY_SORT = "SORT";
+
+    private static final Logger logger = LoggerFactory.getLogger(QueryPlanInspector.class);
+    private static final Set<String> EXPLAINABLE = Set.of("find", "count", "distinct", "aggregate");
+    // everything else in a command (sessions, read preference, cluster time) is not accepted inside explain
+    private static final List<String> EXPLAINED_FIELDS = List.of(
+            "filter", "query", "sort", "projection", "hint", "collation", "key", "pipeline", "cursor");
+    private static final int COMMAND_NOT_FOUND = 59;
+
+    private final ObjectProvider<MongoTemplate> mongoTemplate;
+    private final MeterRegistry meterRegistry;
+    private final Cache<String, Boolean> sampled;
+    private final ExecutorService explainers = Executors.newVirtualThreadPerTaskExecutor();
+    private volatile boolean supported = true;
+
+    public QueryPlanInspector(
+            ObjectProvider<MongoTemplate> mongoTemplate,
+            MeterRegistry meterRegistry,
+            @Value("${app.mongo.query-plans.sample-interval:PT10M}") Duration sampleInterval,
+            @Value("${app.mongo.query-plans.max-shapes:10000}") long maxShapes
+    ) {
+        this.mongoTemplate = mongoTemplate;
+        this.meterRegistry = meterRegistry;
+        this.sampled = sampleInterval.isZero() ? null : Caffeine.newBuilder()
+                .maximumSize(maxShapes)
+                .expireAfterWrite(sampleInterval)
+                .build();
+    }
+
+    /**
+     * Whether the server explains queries; the in-memory servers used for tests do not.
+     */
+    public boolean isSupported() {
+        return supported;
+    }
+
+    /**
+     * Explains a command the application is about to send, unless its shape was explained recently. Returns
+     * immediately, the explain runs on a virtual thread.
+     */
+    void sample(String name, String collection, String shape, BsonDocument command) {
+        if (sampled == null || !supported || !EXPLAINABLE.contains(name)) {
+            return;
+        }
+        if (sampled.asMap().putIfAbsent(name + ' ' + collection + ' ' + shape, Boolean.TRUE) != null) {
+            return;
+        }
+        // the command document is only valid during the listener call
+        BsonDocument copy = command.clone();
+        BsonDocument explained = new BsonDocument(name, copy.get(name));
+        for (String field : EXPLAINED_FIELDS) {
+            BsonValue value = copy.get(field);
+            if (value != null) {
+                explained.put(field, value);
+            }
+        }
+        try {
+            explainers.execute(() -> {
+                try {
+                    report("runtime", collection, name + ' ' + shape, planProblems(explained));
+                } catch (MongoException e) {
+                    logger.debug("Could not explain {} on {}: {}", name, collection, e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // shutting down
+        }
+    }
+
+    /**
+     * Returns the problems of the winning plan of a {@code find}, {@code count}, {@code distinct} or
+     * {@code aggregate} command, empty if it only uses indexes.
+     *
+     * @throws MongoException if the server cannot explain the command
+     */
+    public Set<String> planProblems(Bson command) {
+        Document explanation;
+        try {
+            explanation = mongoTemplate.getObject().getDb()
+                    .runCommand(new Document("explain", command).append("verbosity", "queryPlanner"));
+        } catch (MongoCommandException e) {
+            if (e.getErrorCode() == COMMAND_NOT_FOUND && supported) {
+                supported = false;
+                logger.info("The Mongo server does not support explain, query plans are not checked");
+            }
+            throw e;
+        }
+        Set<String> problems = new TreeSet<>();
+        collectProblems(explanation, problems);
+        return problems;
+    }
+
+    void report(String source, String collection, String query, Set<String> problems) {
+        for (String problem : problems) {
+            Counter.builder("klar.mongodb.unindexed.queries")
+                    .description("Query plans that scan a collection or sort in memory")
+                    .tag("collection", collection)
+                    .tag("stage", problem)
+                    .tag("source", source)
+                    .register(meterRegistry)
+                    .increment();
+        }
+        if (!problems.isEmpty()) {
+            logger.warn("Query on {} is not covered by an index ({}): {}", collection, String.join(", ", problems), query);
+        }
+    }
+
+    /**
+     * Collects the problem stages of the winning plan, wherever the server version nests it.
+     */
+    private static void collectProblems(Object node, Set<String> problems) {
+        if (node instanceof Map<?, ?> map) {
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                if ("rejectedPlans".equals(entry.getKey())) {
+                    continue;
+                }
+                if ("stage".equals(entry.getKey())
+                        && (COLLECTION_SCAN.equals(entry.getValue()) || IN_MEMORY_SORT.equals(entry.getValue()))) {
+                    problems.add((String) entry.getValue());
+                }
+                collectProblems(entry.getValue(), problems);
+            }
+        } else if (node instanceof List<?> list) {
+            for (Object element : list) {
+                collectProblems(element, problems);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        explainers.shutdownNow();
+    }
+}
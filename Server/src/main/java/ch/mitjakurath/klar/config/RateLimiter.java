@@ -0,0 +1,82 @@
+package ch.mitjakurath.klar.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Token bucket per user for the API: a bucket holds up to {@code app.rate-limit.capacity} requests and
+ * refills at {@code app.rate-limit.requests-per-second}. Each bucket is kept as the single point in time at
+ * which it will be full again (the virtual scheduling form of a token bucket), so taking a token is one
+ * compare-and-set without any lock. Rejections are counted in {@code klar.rate-limit.rejected}.
+ */
+@Component
+public class RateLimiter {
+
+    private final boolean enabled;
+    private final long refillNanos;
+    private final long capacityNanos;
+    private final Cache<String, AtomicLong> buckets;
+    private final Counter rejected;
+
+    public RateLimiter(
+            MeterRegistry meterRegistry,
+            @Value("${app.rate-limit.enabled:true}") boolean enabled,
+            @Value("${app.rate-limit.capacity:60}") int capacity,
+            @Value("${app.rate-limit.requests-per-second:20}") double requestsPerSecond,
+            @Value("${app.rate-limit.max-users:100000}") long maxUsers
+    ) {
+        this.enabled = enabled;
+        this.refillNanos = (long) (TimeUnit.SECONDS.toNanos(1) / requestsPerSecond);
+        this.capacityNanos = refillNanos * capacity;
+        // an idle bucket is full again after capacityNanos, and a full bucket is the same as none
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(maxUsers)
+                .expireAfterAccess(Duration.ofNanos(capacityNanos).plusSeconds(1))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, buckets, "rate.limit.buckets");
+        this.rejected = Counter.builder("klar.rate-limit.rejected")
+                .description("API requests rejected with 429 because the user's token bucket was empty")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Takes a token from the user's bucket. Returns 0 if the request may proceed, otherwise how long to wait
+     * in nanoseconds until a token is available.
+     */
+    public long acquire(String userId) {
+        if (!enabled) {
+            return 0;
+        }
+        AtomicLong fullAt = buckets.get(userId, key -> new AtomicLong(Long.MIN_VALUE));
+        while (true) {
+            long now = System.nanoTime();
+            long current = fullAt.get();
+            // a bucket that is full does not get fuller
+            long next = (current == Long.MIN_VALUE || current - now < 0 ? now : current) + refillNanos;
+            long wait = next - now - capacityNanos;
+            if (wait > 0) {
+                rejected.increment();
+                return wait;
+            }
+            if (fullAt.compareAndSet(current, next)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Whole seconds to wait, rounded up, for a {@code Retry-After} header.
+     */
+    public static long retryAfterSeconds(long waitNanos) {
+        return Math.max(1, (waitNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+    }
+}
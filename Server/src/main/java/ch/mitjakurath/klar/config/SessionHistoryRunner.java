@@ -0,0 +1,40 @@
+package ch.mitjakurath.klar.config;
+
+import ch.mitjakurath.klar.service.SessionHistory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+
+/**
+ * Copies the completed sessions into the session history on a virtual thread after startup, see
+ * {@link SessionHistory#migrate()}. Until it has finished, stats and today's sessions are read from the
+ * sessions collection as before.
+ */
+@Component
+@ConditionalOnProperty(name = "app.sessions.history.enabled", havingValue = "true")
+public class SessionHistoryRunner implements ApplicationRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(SessionHistoryRunner.class);
+
+    @Autowired
+    private SessionHistory sessionHistory;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        Thread.ofVirtual().name("session-history").start(() -> {
+            try {
+                sessionHistory.migrate();
+            } catch (DataAccessException e) {
+                logger.warn("Session history migration failed", e);
+            } catch (IllegalStateException e) {
+                // the client was closed because the application is shutting down
+                logger.debug("Session history migration stopped: {}", e.getMessage());
+            }
+        });
+    }
+}
@@ -0,0 +1,16 @@
+package ch.mitjakurath.klar.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Lets Spring Boot auto-configure a {@link org.springframework.cache.CacheManager} (selected with
+ * {@code spring.cache.type}) when a shared second-level settings cache is requested. {@code simple} gives a
+ * local stand-in; {@code redis} shares the cache between instances.
+ */
+@Configuration
+@EnableCaching
+@ConditionalOnProperty(name = "app.settings.cache.l2")
+public class SharedCacheConfiguration {
+}
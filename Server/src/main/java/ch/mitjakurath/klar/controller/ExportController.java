@@ -0,0 +1,51 @@
+package ch.mitjakurath.klar.controller;
+
+import ch.mitjakurath.klar.config.JwtAuthenticationFilter;
+import ch.mitjakurath.klar.service.ExportService;
+import io.jsonwebtoken.Claims;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+@RestController
+@Profile("!reactive")
+@RequestMapping("/api/export")
+@CrossOrigin(origins = "*")
+public class ExportController {
+
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+    private static final MediaType GZIP = MediaType.parseMediaType("application/gzip");
+
+    @Autowired
+    private ExportService exportService;
+
+    @GetMapping
+    public ResponseEntity<StreamingResponseBody> export(
+            @RequestAttribute(JwtAuthenticationFilter.CLAIMS_ATTRIBUTE) Claims claims,
+            @RequestParam(defaultValue = "ndjson") String format) {
+
+        String userId = claims.getSubject();
+
+        return switch (format) {
+            case "ndjson" -> ResponseEntity.ok()
+                    .contentType(NDJSON)
+                    .header(HttpHeaders.CONTENT_DISPOSITION, attachment("klar-export.ndjson"))
+                    .body(out -> exportService.exportNdjson(userId, out));
+            case "json.gz" -> ResponseEntity.ok()
+                    .contentType(GZIP)
+                    .header(HttpHeaders.CONTENT_DISPOSITION, attachment("klar-export.json.gz"))
+                    .body(out -> exportService.exportGzipJson(userId, out));
+            default -> ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        };
+    }
+
+    private static String attachment(String filename) {
+        return ContentDisposition.attachment().filename(filename).build().toString();
+    }
+}
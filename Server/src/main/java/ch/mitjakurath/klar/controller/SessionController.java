@@ -1,113 +1,163 @@
 package ch.mitjakurath.klar.controller;
 
+import ch.mitjakurath.klar.config.JwtAuthenticationFilter;
+import ch.mitjakurath.klar.dto.CursorPage;
+import ch.mitjakurath.klar.dto.SessionRequest;
+import ch.mitjakurath.klar.dto.SessionStartRequest;
 import ch.mitjakurath.klar.model.PomodoroSession;
+import ch.mitjakurath.klar.repository.PageCursor;
+import ch.mitjakurath.klar.service.CollectionVersions;
 import ch.mitjakurath.klar.service.PomodoroSessionService;
-import ch.mitjakurath.klar.util.JwtUtil;
+import ch.mitjakurath.klar.util.SparseFields;
+import io.jsonwebtoken.Claims;
+import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.server.ResponseStatusException;
 
+import java.time.LocalDate;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 @RestController
+@Profile("!reactive")
 @RequestMapping("/api/sessions")
 @CrossOrigin(origins = "*")
 public class SessionController {
 
+    public static final Set<String> LISTED_FIELDS = Set.of(
+            "taskId", "duration", "type", "completed",
+            "startTime", "endTime", "createdAt"
+    );
+
     @Autowired
     private PomodoroSessionService sessionService;
 
     @Autowired
-    private JwtUtil jwtUtil;
+    private CollectionVersions versions;
 
-    private String getUserIdFromToken(String token) {
-        if (token != null && token.startsWith("Bearer ")) {
-            String jwt = token.substring(7);
-            return jwtUtil.getUserIdFromToken(jwt);
-        }
-        throw new RuntimeException("Invalid token");
-    }
+    @Value("${app.api.legacy-unpaged-lists:true}")
+    private boolean legacyUnpagedLists;
 
     @PostMapping
     public ResponseEntity<PomodoroSession> startSession(
-            @RequestHeader("Authorization") String token,
-            @RequestBody Map<String, Object> request) {
+            @RequestAttribute(JwtAuthenticationFilter.CLAIMS_ATTRIBUTE) Claims claims,
+            @Valid @RequestBody SessionStartRequest request) {
 
-        String userId = getUserIdFromToken(token);
-        int duration = (Integer) request.get("duration");
-        String type = (String) request.get("type");
-        String taskId = (String) request.get("taskId");
-
-        PomodoroSession session = sessionService.startSession(userId, duration, type, taskId);
+        String userId = claims.getSubject();
+        PomodoroSession session = sessionService.startSession(
+                userId, request.duration(), request.type(), request.taskId());
         return ResponseEntity.ok(session);
     }
 
     @PutMapping("/{id}")
     public ResponseEntity<PomodoroSession> updateSession(
-            @RequestHeader("Authorization") String token,
+            @RequestAttribute(JwtAuthenticationFilter.CLAIMS_ATTRIBUTE) Claims claims,
             @PathVariable String id,
-            @RequestBody PomodoroSession session) {
+            @Valid @RequestBody SessionRequest request) {
 
-        String userId = getUserIdFromToken(token);
+        String userId = claims.getSubject();
 
-        PomodoroSession existingSession = sessionService.getSessionById(id)
+        String owner = sessionService.getSessionOwner(id)
                 .orElseThrow(() -> new RuntimeException("Session not found"));
 
-        if (!existingSession.getUserId().equals(userId)) {
+        if (!owner.equals(userId)) {
             return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
         }
 
-        session.setId(id);
-        session.setUserId(userId);
-        PomodoroSession updatedSession = sessionService.updateSession(session);
+        PomodoroSession updatedSession = sessionService.updateSession(request.toSession(id, userId));
         return ResponseEntity.ok(updatedSession);
     }
 
     @PostMapping("/{id}/complete")
     public ResponseEntity<PomodoroSession> completeSession(
-            @RequestHeader("Authorization") String token,
+            @RequestAttribute(JwtAuthenticationFilter.CLAIMS_ATTRIBUTE) Claims claims,
             @PathVariable String id) {
 
-        String userId = getUserIdFromToken(token);
+        String userId = claims.getSubject();
+
+        return sessionService.completeSession(id, userId)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> forbiddenOrNotFound(id));
+    }
 
-        PomodoroSession existingSession = sessionService.getSessionById(id)
+    private <T> ResponseEntity<T> forbiddenOrNotFound(String sessionId) {
+        sessionService.getSessionById(sessionId)
                 .orElseThrow(() -> new RuntimeException("Session not found"));
+        return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+    }
 
-        if (!existingSession.getUserId().equals(userId)) {
-            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+    @GetMapping
+    public ResponseEntity<?> getUserSessions(
+            @RequestAttribute(JwtAuthenticationFilter.CLAIMS_ATTRIBUTE) Claims claims,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) String fields,
+            @RequestParam(defaultValue = "false") boolean includeArchived,
+            WebRequest webRequest) {
+
+        String userId = claims.getSubject();
+
+        String etag = versions.etag(userId, CollectionVersions.SESSIONS);
+        if (webRequest.checkNotModified(etag)) {
+            return ConditionalGet.notModified(etag);
         }
 
-        PomodoroSession completedSession = sessionService.completeSession(id);
-        return ResponseEntity.ok(completedSession);
-    }
+        if (legacyUnpagedLists && limit == null && cursor == null && fields == null && !includeArchived) {
+            List<PomodoroSession> sessions = sessionService.getUserSessions(userId);
+            return ConditionalGet.ok(etag).body(sessions);
+        }
 
-    @GetMapping
-    public ResponseEntity<List<PomodoroSession>> getUserSessions(
-            @RequestHeader("Authorization") String token) {
+        PageCursor after;
+        Set<String> selectedFields;
+        try {
+            after = cursor != null ? PageCursor.decode(cursor) : null;
+            selectedFields = SparseFields.parse(fields, LISTED_FIELDS);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
 
-        String userId = getUserIdFromToken(token);
-        List<PomodoroSession> sessions = sessionService.getUserSessions(userId);
-        return ResponseEntity.ok(sessions);
+        CursorPage<PomodoroSession> page = sessionService.getSessionsPage(
+                userId, after, CursorPage.limit(limit), selectedFields, includeArchived);
+        return ConditionalGet.ok(etag).body(SparseFields.select(page, selectedFields));
     }
 
     @GetMapping("/today")
     public ResponseEntity<List<PomodoroSession>> getTodaySessions(
-            @RequestHeader("Authorization") String token) {
+            @RequestAttribute(JwtAuthenticationFilter.CLAIMS_ATTRIBUTE) Claims claims,
+            WebRequest webRequest) {
+
+        String userId = claims.getSubject();
+
+        String etag = versions.etag(userId, CollectionVersions.SESSIONS, LocalDate.now());
+        if (webRequest.checkNotModified(etag)) {
+            return ConditionalGet.notModified(etag);
+        }
 
-        String userId = getUserIdFromToken(token);
         List<PomodoroSession> sessions = sessionService.getTodaySessions(userId);
-        return ResponseEntity.ok(sessions);
+        return ConditionalGet.ok(etag).body(sessions);
     }
 
     @GetMapping("/focus-time/{period}")
     public ResponseEntity<Map<String, Object>> getFocusTimeStats(
-            @RequestHeader("Authorization") String token,
-            @PathVariable String period) {
+            @RequestAttribute(JwtAuthenticationFilter.CLAIMS_ATTRIBUTE) Claims claims,
+            @PathVariable String period,
+            WebRequest webRequest) {
+
+        String userId = claims.getSubject();
+
+        String etag = versions.etag(userId, CollectionVersions.SESSIONS, LocalDate.now());
+        if (webRequest.checkNotModified(etag)) {
+            return ConditionalGet.notModified(etag);
+        }
 
-        String userId = getUserIdFromToken(token);
         Map<String, Object> stats = sessionService.getFocusTimeStats(userId, period);
-        return ResponseEntity.ok(stats);
+        return ConditionalGet.ok(etag).body(stats);
     }
 }
@@ -1,13 +1,17 @@
 package ch.mitjakurath.klar.controller;
 
 import ch.mitjakurath.klar.model.UserSettings;
+import ch.mitjakurath.klar.service.CollectionVersions;
 import ch.mitjakurath.klar.service.UserSettingsService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 @RestController
+@Profile("!reactive")
 @RequestMapping("/api/settings")
 @CrossOrigin(origins = "*")
 public class SettingsController {
@@ -15,13 +19,23 @@ public class SettingsController {
     @Autowired
     private UserSettingsService settingsService;
 
+    @Autowired
+    private CollectionVersions versions;
+
     @GetMapping
     public ResponseEntity<UserSettings> getUserSettings(
-            Authentication authentication
+            Authentication authentication,
+            WebRequest webRequest
     ) {
         String userId = authentication.getName();
-        UserSettings settings = settingsService.getUserSettings(userId);
-        return ResponseEntity.ok(settings);
+
+        String etag = versions.etag(userId, CollectionVersions.SETTINGS);
+        if (webRequest.checkNotModified(etag)) {
+            return ConditionalGet.notModified(etag);
+        }
+
+        UserSettings settings = settingsService.getUserSettings(userId, etag);
+        return ConditionalGet.ok(etag).body(settings);
     }
 
     @PutMapping
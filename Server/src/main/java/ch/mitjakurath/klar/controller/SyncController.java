@@ -0,0 +1,34 @@
+package ch.mitjakurath.klar.controller;
+
+import ch.mitjakurath.klar.config.JwtAuthenticationFilter;
+import ch.mitjakurath.klar.dto.SyncResponse;
+import ch.mitjakurath.klar.service.SyncService;
+import io.jsonwebtoken.Claims;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+@RestController
+@Profile("!reactive")
+@RequestMapping("/api/sync")
+@CrossOrigin(origins = "*")
+public class SyncController {
+
+    @Autowired
+    private SyncService syncService;
+
+    @GetMapping
+    public ResponseEntity<SyncResponse> sync(
+            @RequestAttribute(JwtAuthenticationFilter.CLAIMS_ATTRIBUTE) Claims claims,
+            @RequestParam(required = false) String since) {
+
+        try {
+            return ResponseEntity.ok(syncService.sync(claims.getSubject(), since));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+}
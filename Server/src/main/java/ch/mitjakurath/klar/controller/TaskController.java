@@ -1,62 +1,101 @@
 package ch.mitjakurath.klar.controller;
 
+import ch.mitjakurath.klar.config.JwtAuthenticationFilter;
+import ch.mitjakurath.klar.dto.CursorPage;
+import ch.mitjakurath.klar.dto.TaskBatchRequest;
+import ch.mitjakurath.klar.dto.TaskBatchResult;
+import ch.mitjakurath.klar.dto.TaskRequest;
 import ch.mitjakurath.klar.model.Task;
+import ch.mitjakurath.klar.repository.PageCursor;
+import ch.mitjakurath.klar.service.CollectionVersions;
 import ch.mitjakurath.klar.service.TaskService;
-import ch.mitjakurath.klar.util.JwtUtil;
+import ch.mitjakurath.klar.util.SparseFields;
+import io.jsonwebtoken.Claims;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.server.ResponseStatusException;
 
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 @RestController
+@Profile("!reactive")
 @RequestMapping("/api/tasks")
 @CrossOrigin(origins = "*")
 public class TaskController {
 
+    public static final Set<String> LISTED_FIELDS = Set.of(
+            "title", "description", "completed", "priority",
+            "dueDate", "createdAt", "updatedAt", "completedAt"
+    );
+
     @Autowired
     private TaskService taskService;
 
     @Autowired
-    private JwtUtil jwtUtil;
+    private CollectionVersions versions;
 
-    private String getUserIdFromToken(String token) {
-        if (token != null && token.startsWith("Bearer ")) {
-            String jwt = token.substring(7);
-            return jwtUtil.getUserIdFromToken(jwt);
-        }
-        throw new RuntimeException("Invalid token");
-    }
+    @Value("${app.api.legacy-unpaged-lists:true}")
+    private boolean legacyUnpagedLists;
 
     @GetMapping
-    public ResponseEntity<List<Task>> getAllTasks(
-            @RequestHeader("Authorization") String token) {
-        String userId = getUserIdFromToken(token);
-        List<Task> tasks = taskService.getAllTasksForUser(userId);
-        return ResponseEntity.ok(tasks);
+    public ResponseEntity<?> getAllTasks(
+            @RequestAttribute(JwtAuthenticationFilter.CLAIMS_ATTRIBUTE) Claims claims,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) String fields,
+            @RequestParam(defaultValue = "false") boolean includeArchived,
+            WebRequest webRequest) {
+        String userId = claims.getSubject();
+
+        String etag = versions.etag(userId, CollectionVersions.TASKS);
+        if (webRequest.checkNotModified(etag)) {
+            return ConditionalGet.notModified(etag);
+        }
+
+        if (legacyUnpagedLists && limit == null && cursor == null && fields == null && !includeArchived) {
+            List<Task> tasks = taskService.getAllTasksForUser(userId);
+            return ConditionalGet.ok(etag).body(tasks);
+        }
+
+        PageCursor after;
+        Set<String> selectedFields;
+        try {
+            after = cursor != null ? PageCursor.decode(cursor) : null;
+            selectedFields = SparseFields.parse(fields, LISTED_FIELDS);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+
+        CursorPage<Task> page = taskService.getTasksPage(
+                userId, after, CursorPage.limit(limit), selectedFields, includeArchived);
+        return ConditionalGet.ok(etag).body(SparseFields.select(page, selectedFields));
     }
 
     @PostMapping
     public ResponseEntity<Task> createTask(
-            @RequestHeader("Authorization") String token,
-            @Valid @RequestBody Task task) {
+            @RequestAttribute(JwtAuthenticationFilter.CLAIMS_ATTRIBUTE) Claims claims,
+            @Valid @RequestBody TaskRequest request) {
 
-        String userId = getUserIdFromToken(token);
-        task.setUserId(userId);
-        Task createdTask = taskService.createTask(task);
+        String userId = claims.getSubject();
+        Task createdTask = taskService.createTask(request.toTask(null, userId));
         return ResponseEntity.ok(createdTask);
     }
 
     @PutMapping("/{id}")
     public ResponseEntity<Task> updateTask(
-            @RequestHeader("Authorization") String token,
+            @RequestAttribute(JwtAuthenticationFilter.CLAIMS_ATTRIBUTE) Claims claims,
             @PathVariable String id,
-            @Valid @RequestBody Task task) {
+            @Valid @RequestBody TaskRequest request) {
 
-        String userId = getUserIdFromToken(token);
+        String userId = claims.getSubject();
 
         Task existingTask = taskService.getTaskById(id)
                 .orElseThrow(() -> new RuntimeException("Task not found"));
@@ -65,18 +104,16 @@ public class TaskController {
             return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
         }
 
-        task.setId(id);
-        task.setUserId(userId);
-        Task updatedTask = taskService.updateTask(task);
+        Task updatedTask = taskService.updateTask(request.toTask(id, userId));
         return ResponseEntity.ok(updatedTask);
     }
 
     @DeleteMapping("/{id}")
     public ResponseEntity<Void> deleteTask(
-            @RequestHeader("Authorization") String token,
+            @RequestAttribute(JwtAuthenticationFilter.CLAIMS_ATTRIBUTE) Claims claims,
             @PathVariable String id) {
 
-        String userId = getUserIdFromToken(token);
+        String userId = claims.getSubject();
 
         Task existingTask = taskService.getTaskById(id)
                 .orElseThrow(() -> new RuntimeException("Task not found"));
@@ -91,28 +128,51 @@ public class TaskController {
 
     @PatchMapping("/{id}/toggle")
     public ResponseEntity<Task> toggleTask(
-            @RequestHeader("Authorization") String token,
+            @RequestAttribute(JwtAuthenticationFilter.CLAIMS_ATTRIBUTE) Claims claims,
             @PathVariable String id) {
 
-        String userId = getUserIdFromToken(token);
+        String userId = claims.getSubject();
 
-        Task existingTask = taskService.getTaskById(id)
+        return taskService.toggleTaskCompletion(id, userId)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> forbiddenOrNotFound(id));
+    }
+
+    private <T> ResponseEntity<T> forbiddenOrNotFound(String taskId) {
+        taskService.getTaskById(taskId)
                 .orElseThrow(() -> new RuntimeException("Task not found"));
+        return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+    }
 
-        if (!existingTask.getUserId().equals(userId)) {
-            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+    @PostMapping("/batch")
+    public ResponseEntity<List<TaskBatchResult>> batch(
+            @RequestAttribute(JwtAuthenticationFilter.CLAIMS_ATTRIBUTE) Claims claims,
+            @RequestBody TaskBatchRequest request) {
+
+        String userId = claims.getSubject();
+
+        if (request.operations() == null || request.operations().size() > TaskBatchRequest.MAX_OPERATIONS) {
+            return ResponseEntity.badRequest().build();
         }
 
-        Task updatedTask = taskService.toggleTaskCompletion(id);
-        return ResponseEntity.ok(updatedTask);
+        return ResponseEntity.ok(taskService.applyBatch(userId, request.operations()));
     }
 
     @GetMapping("/stats")
     public ResponseEntity<Map<String, Object>> getTaskStats(
-            @RequestHeader("Authorization") String token) {
+            @RequestAttribute(JwtAuthenticationFilter.CLAIMS_ATTRIBUTE) Claims claims,
+            WebRequest webRequest) {
+
+        String userId = claims.getSubject();
+
+        // today's and overdue counts depend on the clock, so the ETag changes every minute as well
+        long minute = System.currentTimeMillis() / 60_000;
+        String etag = versions.etag(userId, CollectionVersions.TASKS, "stats", Long.toString(minute, 36));
+        if (webRequest.checkNotModified(etag)) {
+            return ConditionalGet.notModified(etag);
+        }
 
-        String userId = getUserIdFromToken(token);
         Map<String, Object> stats = taskService.getTaskStats(userId);
-        return ResponseEntity.ok(stats);
+        return ConditionalGet.ok(etag).body(stats);
     }
 }
\ No newline at end of file
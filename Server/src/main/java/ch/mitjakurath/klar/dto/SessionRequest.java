@@ -0,0 +1,39 @@
+package ch.mitjakurath.klar.dto;
+
+import ch.mitjakurath.klar.model.PomodoroSession;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Positive;
+
+import java.time.LocalDateTime;
+
+/**
+ * Body of {@code PUT /api/sessions/{id}}. The session is replaced with these fields, so {@code duration}
+ * and {@code type} are required as when starting one; {@code createdAt} is kept if the client sends it back.
+ */
+public record SessionRequest(
+        String taskId,
+        @Positive int duration,
+        @NotBlank String type,
+        boolean completed,
+        LocalDateTime startTime,
+        LocalDateTime endTime,
+        LocalDateTime createdAt
+) {
+
+    public PomodoroSession toSession(String id, String userId) {
+        PomodoroSession session = new PomodoroSession();
+        session.setId(id);
+        session.setUserId(userId);
+        session.setTaskId(taskId);
+        session.setDuration(duration);
+        session.setType(type);
+        session.setStartTime(startTime);
+        session.setEndTime(endTime);
+        // fills in endTime if the client did not send one
+        session.setCompleted(completed);
+        if (createdAt != null) {
+            session.setCreatedAt(createdAt);
+        }
+        return session;
+    }
+}
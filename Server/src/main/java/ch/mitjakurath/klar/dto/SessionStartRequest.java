@@ -0,0 +1,9 @@
+package ch.mitjakurath.klar.dto;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Positive;
+
+/**
+ * Body of {@code POST /api/sessions}; {@code duration} is in minutes.
+ */
+public record SessionStartRequest(@Positive int duration, @NotBlank String type, String taskId) {}
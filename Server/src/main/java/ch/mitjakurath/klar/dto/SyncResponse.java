@@ -0,0 +1,22 @@
+package ch.mitjakurath.klar.dto;
+
+import ch.mitjakurath.klar.model.PomodoroSession;
+import ch.mitjakurath.klar.model.Task;
+import ch.mitjakurath.klar.model.UserSettings;
+
+import java.util.List;
+
+/**
+ * Changes since a sync token. {@code settings} is {@code null} if they did not change. When {@code hasMore}
+ * is set the client should sync again right away with {@code token}; when {@code reset} is set the token was
+ * too old and this is the first page of a full sync, so local data has to be replaced.
+ */
+public record SyncResponse(
+        List<Task> tasks,
+        List<PomodoroSession> sessions,
+        UserSettings settings,
+        List<String> deletedTasks,
+        String token,
+        boolean hasMore,
+        boolean reset
+) {}
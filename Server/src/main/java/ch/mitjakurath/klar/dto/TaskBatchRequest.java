@@ -0,0 +1,14 @@
+package ch.mitjakurath.klar.dto;
+
+import java.util.List;
+
+public record TaskBatchRequest(List<Operation> operations) {
+
+    public static final int MAX_OPERATIONS = 500;
+
+    /**
+     * One of {@code create} (with {@code task}), {@code update} (with {@code id} and {@code task}),
+     * {@code toggle} or {@code delete} (with {@code id}).
+     */
+    public record Operation(String op, String id, TaskRequest task) {}
+}
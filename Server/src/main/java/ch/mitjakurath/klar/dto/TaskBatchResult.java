@@ -0,0 +1,16 @@
+package ch.mitjakurath.klar.dto;
+
+import ch.mitjakurath.klar.model.Task;
+
+public record TaskBatchResult(int index, String op, String id, Status status, Task task, String error) {
+
+    public enum Status { OK, FORBIDDEN, NOT_FOUND, INVALID, FAILED }
+
+    public static TaskBatchResult ok(int index, String op, String id, Task task) {
+        return new TaskBatchResult(index, op, id, Status.OK, task, null);
+    }
+
+    public static TaskBatchResult failed(int index, String op, String id, Status status, String error) {
+        return new TaskBatchResult(index, op, id, status, null, error);
+    }
+}
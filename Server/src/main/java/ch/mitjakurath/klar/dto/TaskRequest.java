@@ -0,0 +1,43 @@
+package ch.mitjakurath.klar.dto;
+
+import ch.mitjakurath.klar.model.Task;
+import jakarta.validation.constraints.NotBlank;
+
+import java.time.LocalDateTime;
+
+/**
+ * Body of task creates and updates, also used by batch operations. An update replaces the task with these
+ * fields; {@code createdAt} and {@code completedAt} are kept if the client sends them back.
+ */
+public record TaskRequest(
+        @NotBlank String title,
+        String description,
+        boolean completed,
+        String priority,
+        LocalDateTime dueDate,
+        LocalDateTime createdAt,
+        LocalDateTime completedAt
+) {
+
+    public boolean hasTitle() {
+        return title != null && !title.isBlank();
+    }
+
+    public Task toTask(String id, String userId) {
+        Task task = new Task(userId, title);
+        task.setId(id);
+        task.setDescription(description);
+        task.setCompleted(completed);
+        if (priority != null) {
+            task.setPriority(priority);
+        }
+        task.setDueDate(dueDate);
+        if (createdAt != null) {
+            task.setCreatedAt(createdAt);
+        }
+        if (completed && completedAt != null) {
+            task.setCompletedAt(completedAt);
+        }
+        return task;
+    }
+}
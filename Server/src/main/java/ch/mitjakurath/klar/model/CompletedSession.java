@@ -0,0 +1,86 @@
+package ch.mitjakurath.klar.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.TimeSeries;
+import org.springframework.data.mongodb.core.timeseries.Granularity;
+
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+/**
+ * A completed session in the time-series collection {@code pomodoro_session_history}, which Mongo stores in
+ * compressed buckets per user and hour. Entries are only inserted and deleted, never updated.
+ */
+@TimeSeries(
+        collection = "pomodoro_session_history",
+        timeField = "startTime",
+        metaField = "userId",
+        granularity = Granularity.MINUTES
+)
+public class CompletedSession {
+    @Id
+    private String id;
+
+    private String sessionId;
+    private String userId;
+    private String taskId;
+    private int duration;
+    private String type;
+    private LocalDateTime startTime;
+    private LocalDateTime endTime;
+    private LocalDateTime createdAt;
+    private LocalDateTime updatedAt;
+
+    public static CompletedSession of(PomodoroSession session) {
+        CompletedSession entry = new CompletedSession();
+        entry.sessionId = session.getId();
+        entry.userId = session.getUserId();
+        entry.taskId = session.getTaskId();
+        entry.duration = session.getDuration();
+        entry.type = session.getType();
+        entry.startTime = session.getStartTime();
+        entry.endTime = session.getEndTime();
+        entry.createdAt = session.getCreatedAt();
+        entry.updatedAt = session.getUpdatedAt();
+        return entry;
+    }
+
+    /**
+     * Whether both entries describe the same session in the same way, whenever they were last updated.
+     */
+    public boolean sameAs(CompletedSession other) {
+        return Objects.equals(sessionId, other.sessionId)
+                && Objects.equals(userId, other.userId)
+                && Objects.equals(taskId, other.taskId)
+                && duration == other.duration
+                && Objects.equals(type, other.type)
+                && Objects.equals(startTime, other.startTime)
+                && Objects.equals(endTime, other.endTime);
+    }
+
+    public PomodoroSession toSession() {
+        PomodoroSession session = new PomodoroSession();
+        session.setId(sessionId);
+        session.setUserId(userId);
+        session.setTaskId(taskId);
+        session.setDuration(duration);
+        session.setType(type);
+        session.setStartTime(startTime);
+        session.setEndTime(endTime);
+        session.setCompleted(true);
+        session.setCreatedAt(createdAt);
+        session.setUpdatedAt(updatedAt);
+        return session;
+    }
+
+    public String getId() { return id; }
+    public String getSessionId() { return sessionId; }
+    public String getUserId() { return userId; }
+    public String getTaskId() { return taskId; }
+    public int getDuration() { return duration; }
+    public String getType() { return type; }
+    public LocalDateTime getStartTime() { return startTime; }
+    public LocalDateTime getEndTime() { return endTime; }
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public LocalDateTime getUpdatedAt() { return updatedAt; }
+}
@@ -0,0 +1,73 @@
+package ch.mitjakurath.klar.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@Document(collection = "daily_user_stats")
+@CompoundIndex(name = "userId_day", def = "{'userId': 1, 'day': 1}")
+public class DailyUserStats {
+    public static final String TOTAL = "total";
+
+    @Id
+    private String id;
+
+    private String userId;
+    private String day;
+
+    private long tasksCreated;
+    private long tasksCompleted;
+    private long totalTasks;
+    private long completedTasks;
+    private Map<String, Long> tasksByPriority = new HashMap<>();
+    private Map<String, Long> completedTasksByPriority = new HashMap<>();
+
+    private long sessionsStarted;
+    private Map<String, Long> focusMinutesByType = new HashMap<>();
+    private Map<String, Long> completedSessionsByType = new HashMap<>();
+
+    public DailyUserStats() {}
+
+    public static String idOf(String userId, String day) {
+        return userId + ":" + day;
+    }
+
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+
+    public String getUserId() { return userId; }
+    public void setUserId(String userId) { this.userId = userId; }
+
+    public String getDay() { return day; }
+    public void setDay(String day) { this.day = day; }
+
+    public long getTasksCreated() { return tasksCreated; }
+    public void setTasksCreated(long tasksCreated) { this.tasksCreated = tasksCreated; }
+
+    public long getTasksCompleted() { return tasksCompleted; }
+    public void setTasksCompleted(long tasksCompleted) { this.tasksCompleted = tasksCompleted; }
+
+    public long getTotalTasks() { return totalTasks; }
+    public void setTotalTasks(long totalTasks) { this.totalTasks = totalTasks; }
+
+    public long getCompletedTasks() { return completedTasks; }
+    public void setCompletedTasks(long completedTasks) { this.completedTasks = completedTasks; }
+
+    public Map<String, Long> getTasksByPriority() { return tasksByPriority; }
+    public void setTasksByPriority(Map<String, Long> tasksByPriority) { this.tasksByPriority = tasksByPriority; }
+
+    public Map<String, Long> getCompletedTasksByPriority() { return completedTasksByPriority; }
+    public void setCompletedTasksByPriority(Map<String, Long> completedTasksByPriority) { this.completedTasksByPriority = completedTasksByPriority; }
+
+    public long getSessionsStarted() { return sessionsStarted; }
+    public void setSessionsStarted(long sessionsStarted) { this.sessionsStarted = sessionsStarted; }
+
+    public Map<String, Long> getFocusMinutesByType() { return focusMinutesByType; }
+    public void setFocusMinutesByType(Map<String, Long> focusMinutesByType) { this.focusMinutesByType = focusMinutesByType; }
+
+    public Map<String, Long> getCompletedSessionsByType() { return completedSessionsByType; }
+    public void setCompletedSessionsByType(Map<String, Long> completedSessionsByType) { this.completedSessionsByType = completedSessionsByType; }
+}
@@ -1,17 +1,33 @@
 package ch.mitjakurath.klar.model;
 
+import ch.mitjakurath.klar.util.SparseFields;
+import com.fasterxml.jackson.annotation.JsonFilter;
 import org.springframework.data.annotation.Id;
-import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.time.LocalDateTime;
 
 @Document(collection = "pomodoro_sessions")
+// auto-index-creation is off, MongoIndexRunner creates these after startup; userId_startTime serves the
+// $match of aggregateFocusTime
+@CompoundIndexes({
+        @CompoundIndex(name = "userId_startTime", def = "{'userId': 1, 'startTime': -1}"),
+        @CompoundIndex(name = "userId_createdAt_id", def = "{'userId': 1, 'createdAt': -1, '_id': -1}"),
+        @CompoundIndex(name = "userId_updatedAt_id", def = "{'userId': 1, 'updatedAt': 1, '_id': 1}")
+})
+@JsonFilter(SparseFields.FILTER_ID)
 public class PomodoroSession {
+    /**
+     * Completed sessions older than {@code app.archive.horizon} are moved here, see {@code ArchiveService}.
+     */
+    public static final String ARCHIVE = "pomodoro_sessions_archive";
+
     @Id
     private String id;
 
-    @Indexed
+    // userId alone is served by the compound indexes, which all start with it
     private String userId;
 
     private String taskId;
@@ -21,9 +37,11 @@ public class PomodoroSession {
     private LocalDateTime startTime;
     private LocalDateTime endTime;
     private LocalDateTime createdAt;
+    private LocalDateTime updatedAt;
 
     public PomodoroSession() {
         this.createdAt = LocalDateTime.now();
+        this.updatedAt = this.createdAt;
     }
 
     public PomodoroSession(String userId, int duration, String type) {
@@ -65,4 +83,7 @@ public class PomodoroSession {
 
     public LocalDateTime getCreatedAt() { return createdAt; }
     public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+
+    public LocalDateTime getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(LocalDateTime updatedAt) { this.updatedAt = updatedAt; }
 }
\ No newline at end of file
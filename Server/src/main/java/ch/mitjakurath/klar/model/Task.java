@@ -1,18 +1,35 @@
 package ch.mitjakurath.klar.model;
 
+import ch.mitjakurath.klar.util.SparseFields;
+import com.fasterxml.jackson.annotation.JsonFilter;
 import jakarta.validation.constraints.NotBlank;
 import org.springframework.data.annotation.Id;
-import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.time.LocalDateTime;
 
 @Document(collection = "tasks")
+@JsonFilter(SparseFields.FILTER_ID)
+// auto-index-creation is off, MongoIndexRunner creates these after startup; the userId prefix serves the
+// $match of aggregateTaskStats, userId_completed_dueDate the overdue count used with rollups
+@CompoundIndexes({
+        @CompoundIndex(name = "userId_createdAt_id", def = "{'userId': 1, 'createdAt': -1, '_id': -1}"),
+        @CompoundIndex(name = "userId_completed_createdAt", def = "{'userId': 1, 'completed': 1, 'createdAt': -1}"),
+        @CompoundIndex(name = "userId_completed_dueDate", def = "{'userId': 1, 'completed': 1, 'dueDate': 1}"),
+        @CompoundIndex(name = "userId_updatedAt_id", def = "{'userId': 1, 'updatedAt': 1, '_id': 1}")
+})
 public class Task {
+    /**
+     * Completed tasks older than {@code app.archive.horizon} are moved here, see {@code ArchiveService}.
+     */
+    public static final String ARCHIVE = "tasks_archive";
+
     @Id
     private String id;
 
-    @Indexed
+    // userId alone is served by the compound indexes, which all start with it
     private String userId;
 
     @NotBlank
@@ -0,0 +1,54 @@
+package ch.mitjakurath.klar.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/**
+ * Records the deletion of a document so that delta syncs can report it. Tombstones expire after
+ * {@link #RETENTION}; clients that have not synced for longer than that get a full sync.
+ */
+@Document(collection = "tombstones")
+@CompoundIndex(name = "userId_deletedAt_id", def = "{'userId': 1, 'deletedAt': 1, '_id': 1}")
+public class Tombstone {
+    public static final Duration RETENTION = Duration.ofDays(30);
+    public static final String TASKS = "tasks";
+
+    @Id
+    private String id;
+
+    private String userId;
+    private String collection;
+    private String entityId;
+
+    @Indexed(name = "deletedAt_ttl", expireAfter = "30d")
+    private LocalDateTime deletedAt;
+
+    public Tombstone() {}
+
+    public Tombstone(String userId, String collection, String entityId, LocalDateTime deletedAt) {
+        this.userId = userId;
+        this.collection = collection;
+        this.entityId = entityId;
+        this.deletedAt = deletedAt;
+    }
+
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+
+    public String getUserId() { return userId; }
+    public void setUserId(String userId) { this.userId = userId; }
+
+    public String getCollection() { return collection; }
+    public void setCollection(String collection) { this.collection = collection; }
+
+    public String getEntityId() { return entityId; }
+    public void setEntityId(String entityId) { this.entityId = entityId; }
+
+    public LocalDateTime getDeletedAt() { return deletedAt; }
+    public void setDeletedAt(LocalDateTime deletedAt) { this.deletedAt = deletedAt; }
+}
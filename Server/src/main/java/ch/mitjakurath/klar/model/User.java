@@ -3,12 +3,14 @@ package ch.mitjakurath.klar.model;
 import jakarta.validation.constraints.Email;
 import jakarta.validation.constraints.NotBlank;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.time.LocalDateTime;
 
 @Document(collection = "users")
+@CompoundIndex(name = "provider_providerId", def = "{'provider': 1, 'providerId': 1}")
 public class User {
     @Id
     private String id;
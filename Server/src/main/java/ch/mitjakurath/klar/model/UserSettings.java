@@ -4,8 +4,11 @@ import org.springframework.data.annotation.Id;
 import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
 @Document(collection = "user_settings")
-public class UserSettings {
+public class UserSettings implements Serializable {
     @Id
     private String id;
 
@@ -21,10 +24,14 @@ public class UserSettings {
     private boolean notificationsEnabled = true;
     private boolean soundEnabled = true;
     private String theme = "light";
+    private LocalDateTime updatedAt;
 
-    public UserSettings() {}
+    public UserSettings() {
+        this.updatedAt = LocalDateTime.now();
+    }
 
     public UserSettings(String userId) {
+        this();
         this.userId = userId;
     }
 
@@ -60,4 +67,7 @@ public class UserSettings {
 
     public String getTheme() { return theme; }
     public void setTheme(String theme) { this.theme = theme; }
+
+    public LocalDateTime getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(LocalDateTime updatedAt) { this.updatedAt = updatedAt; }
 }
\ No newline at end of file
@@ -0,0 +1,109 @@
+package ch.mitjakurath.klar.reactive;
+
+import ch.mitjakurath.klar.config.JwtAuthenticationFilter;
+import io.jsonwebtoken.Claims;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Helpers shared by the functional handlers.
+ */
+final class Handlers {
+
+    private static final CacheControl REVALIDATE = CacheControl.noCache().cachePrivate();
+    private static final List<MediaType> REPRESENTATIONS = List.of(
+            MediaType.APPLICATION_JSON, MediaType.APPLICATION_CBOR, new MediaType("application", "x-jackson-smile"));
+
+    private Handlers() {}
+
+    static String userId(ServerRequest request) {
+        return request.attribute(JwtAuthenticationFilter.CLAIMS_ATTRIBUTE)
+                .map(claims -> ((Claims) claims).getSubject())
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.UNAUTHORIZED));
+    }
+
+    /**
+     * Runs a call into the blocking services off the event loop.
+     */
+    static <T> Mono<T> blocking(Callable<T> call) {
+        return Mono.fromCallable(call).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * Answers with 304 if the request's {@code If-None-Match} matches {@code etag}, else with {@code response}
+     * in the representation the request's {@code Accept} header prefers.
+     */
+    static Mono<ServerResponse> conditional(
+            ServerRequest request,
+            String etag,
+            Function<ServerResponse.BodyBuilder, Mono<ServerResponse>> response
+    ) {
+        return request.checkNotModified(etag)
+                .flatMap(notModified -> ServerResponse.from(notModified).cacheControl(REVALIDATE)
+                        .varyBy(HttpHeaders.ACCEPT).build())
+                .switchIfEmpty(Mono.defer(() -> {
+                    ServerResponse.BodyBuilder ok = ServerResponse.ok().eTag(etag).cacheControl(REVALIDATE)
+                            .varyBy(HttpHeaders.ACCEPT);
+                    representation(request).ifPresent(ok::contentType);
+                    return response.apply(ok);
+                }));
+    }
+
+    /**
+     * Like {@link #conditional(ServerRequest, String, Function)}, once {@code etag} has been read.
+     */
+    static Mono<ServerResponse> conditional(
+            ServerRequest request,
+            Mono<String> etag,
+            Function<ServerResponse.BodyBuilder, Mono<ServerResponse>> response
+    ) {
+        return etag.flatMap(tag -> conditional(request, tag, response));
+    }
+
+    /**
+     * The functional endpoints write with the first codec that can, without looking at {@code Accept}, so
+     * the binary representations are only used if the content type is chosen up front.
+     */
+    private static Optional<MediaType> representation(ServerRequest request) {
+        List<MediaType> accepted = new ArrayList<>(request.headers().accept());
+        accepted.sort(Comparator.comparingDouble(MediaType::getQualityValue).reversed());
+        return accepted.stream()
+                .flatMap(type -> REPRESENTATIONS.stream().filter(type::includes))
+                .findFirst();
+    }
+
+    static <T> T validate(Validator validator, T body) {
+        Set<ConstraintViolation<T>> violations = validator.validate(body);
+        if (!violations.isEmpty()) {
+            ConstraintViolation<T> violation = violations.iterator().next();
+            throw new ResponseStatusException(
+                    HttpStatus.BAD_REQUEST, violation.getPropertyPath() + " " + violation.getMessage());
+        }
+        return body;
+    }
+
+    static <T> T parameter(Supplier<T> parse) {
+        try {
+            return parse.get();
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package ch.mitjakurath.klar.reactive;
+
+import ch.mitjakurath.klar.config.JwtAuthenticationFilter;
+import ch.mitjakurath.klar.config.JwtPrincipalCache;
+import ch.mitjakurath.klar.service.KlarUserDetailsService;
+import io.jsonwebtoken.Claims;
+import java.util.Optional;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.util.StringUtils;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+/**
+ * WebFlux counterpart of {@link JwtAuthenticationFilter}. The user is taken from the same cache without
+ * blocking the event loop. Not a bean on purpose: WebFlux would otherwise run it a second time outside of
+ * the security chain.
+ */
+public class JwtAuthenticationWebFilter implements WebFilter {
+
+    private static final Logger logger = LoggerFactory.getLogger(JwtAuthenticationWebFilter.class);
+
+    private final JwtPrincipalCache jwtPrincipalCache;
+    private final KlarUserDetailsService userDetailsService;
+
+    public JwtAuthenticationWebFilter(JwtPrincipalCache jwtPrincipalCache, KlarUserDetailsService userDetailsService) {
+        this.jwtPrincipalCache = jwtPrincipalCache;
+        this.userDetailsService = userDetailsService;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        String jwt = getJwtFromRequest(exchange);
+        Claims claims = StringUtils.hasText(jwt) ? jwtPrincipalCache.getClaims(jwt) : null;
+        if (claims == null) {
+            return chain.filter(exchange);
+        }
+
+        return Mono.fromFuture(() -> userDetailsService.loadUserAsync(claims.getSubject()))
+                .map(Optional::of)
+                .onErrorResume(e -> {
+                    logger.error("Could not set user authentication in security context", e);
+                    return Mono.just(Optional.empty());
+                })
+                .flatMap(user -> {
+                    if (user.isEmpty()) {
+                        return chain.filter(exchange);
+                    }
+                    UserDetails userDetails = user.get();
+                    UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(
+                            userDetails,
+                            null,
+                            userDetails.getAuthorities()
+                    );
+                    exchange.getAttributes().put(JwtAuthenticationFilter.CLAIMS_ATTRIBUTE, claims);
+                    return chain.filter(exchange)
+                            .contextWrite(ReactiveSecurityContextHolder.withAuthentication(authentication));
+                });
+    }
+
+    private String getJwtFromRequest(ServerWebExchange exchange) {
+        String bearerToken = exchange.getRequest().getHeaders().getFirst(HttpHeaders.AUTHORIZATION);
+        if (StringUtils.hasText(bearerToken) && bearerToken.startsWith("Bearer ")) {
+            return bearerToken.substring(7);
+        }
+        return null;
+    }
+}
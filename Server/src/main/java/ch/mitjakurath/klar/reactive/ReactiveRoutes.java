@@ -0,0 +1,47 @@
+package ch.mitjakurath.klar.reactive;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.ServerResponse;
+
+import static org.springframework.web.reactive.function.server.RouterFunctions.route;
+
+/**
+ * Routes of the {@code reactive} profile. They mirror the task, session, settings and stream endpoints of
+ * the servlet controllers; auth, export and sync are only served by servlet instances.
+ */
+@Configuration
+@Profile("reactive")
+public class ReactiveRoutes {
+
+    @Bean
+    RouterFunction<ServerResponse> apiRoutes(
+            TaskHandler tasks,
+            SessionHandler sessions,
+            SettingsHandler settings,
+            StreamHandler stream
+    ) {
+        return route()
+                .path("/api/tasks", builder -> builder
+                        .GET("", tasks::getAllTasks)
+                        .POST("", tasks::createTask)
+                        .GET("/stats", tasks::getTaskStats)
+                        .POST("/batch", tasks::batch)
+                        .PUT("/{id}", tasks::updateTask)
+                        .DELETE("/{id}", tasks::deleteTask)
+                        .PATCH("/{id}/toggle", tasks::toggleTask))
+                .path("/api/sessions", builder -> builder
+                        .GET("", sessions::getUserSessions)
+                        .POST("", sessions::startSession)
+                        .GET("/today", sessions::getTodaySessions)
+                        .GET("/focus-time/{period}", sessions::getFocusTimeStats)
+                        .PUT("/{id}", sessions::updateSession)
+                        .POST("/{id}/complete", sessions::completeSession))
+                .GET("/api/settings", settings::getUserSettings)
+                .PUT("/api/settings", settings::updateUserSettings)
+                .GET("/api/stream", stream::stream)
+                .build();
+    }
+}
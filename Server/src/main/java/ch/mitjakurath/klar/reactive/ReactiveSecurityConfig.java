@@ -0,0 +1,80 @@
+package ch.mitjakurath.klar.reactive;
+
+import ch.mitjakurath.klar.config.JwtPrincipalCache;
+import ch.mitjakurath.klar.config.ManagementPort;
+import ch.mitjakurath.klar.config.RateLimiter;
+import ch.mitjakurath.klar.service.KlarUserDetailsService;
+import java.util.List;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.config.annotation.web.reactive.EnableWebFluxSecurity;
+import org.springframework.security.config.web.server.SecurityWebFiltersOrder;
+import org.springframework.security.config.web.server.ServerHttpSecurity;
+import org.springframework.security.web.server.SecurityWebFilterChain;
+import org.springframework.security.web.server.authentication.HttpStatusServerEntryPoint;
+import org.springframework.security.web.server.context.NoOpServerSecurityContextRepository;
+import org.springframework.security.web.server.util.matcher.ServerWebExchangeMatcher;
+import org.springframework.web.cors.CorsConfiguration;
+import org.springframework.web.cors.reactive.CorsConfigurationSource;
+import org.springframework.web.cors.reactive.UrlBasedCorsConfigurationSource;
+
+/**
+ * Security for the {@code reactive} profile. Only bearer tokens are accepted; OAuth2 login stays on the
+ * servlet instances that issue the tokens.
+ */
+@Configuration
+@EnableWebFluxSecurity
+@Profile("reactive")
+public class ReactiveSecurityConfig {
+
+    @Bean
+    SecurityWebFilterChain securityWebFilterChain(
+            ServerHttpSecurity http,
+            JwtPrincipalCache jwtPrincipalCache,
+            KlarUserDetailsService userDetailsService,
+            RateLimiter rateLimiter,
+            ManagementPort managementPort
+    ) {
+        return http
+                .cors(cors -> cors.configurationSource(corsConfigurationSource()))
+                .csrf(ServerHttpSecurity.CsrfSpec::disable)
+                .httpBasic(ServerHttpSecurity.HttpBasicSpec::disable)
+                .formLogin(ServerHttpSecurity.FormLoginSpec::disable)
+                .securityContextRepository(NoOpServerSecurityContextRepository.getInstance())
+                .exceptionHandling(exceptions ->
+                        exceptions.authenticationEntryPoint(new HttpStatusServerEntryPoint(HttpStatus.UNAUTHORIZED))
+                )
+                .authorizeExchange(auth -> {
+                    auth.pathMatchers("/swagger-ui/**", "/v3/api-docs/**", "/swagger-ui.html").permitAll();
+                    auth.pathMatchers("/actuator/health").permitAll();
+                    auth.matchers(exchange -> exchange.getRequest().getLocalAddress() != null
+                            && managementPort.matches(exchange.getRequest().getLocalAddress().getPort())
+                            && ManagementPort.PROMETHEUS.equals(exchange.getRequest().getPath().value())
+                            ? ServerWebExchangeMatcher.MatchResult.match()
+                            : ServerWebExchangeMatcher.MatchResult.notMatch()).permitAll();
+                    auth.pathMatchers("/api/**").authenticated();
+                    auth.anyExchange().authenticated();
+                })
+                .addFilterAt(
+                        new JwtAuthenticationWebFilter(jwtPrincipalCache, userDetailsService),
+                        SecurityWebFiltersOrder.AUTHENTICATION
+                )
+                .addFilterAfter(new RateLimitWebFilter(rateLimiter), SecurityWebFiltersOrder.AUTHENTICATION)
+                .build();
+    }
+
+    @Bean
+    CorsConfigurationSource corsConfigurationSource() {
+        CorsConfiguration configuration = new CorsConfiguration();
+        configuration.setAllowedOriginPatterns(List.of("http://localhost:1420"));
+        configuration.setAllowedMethods(List.of("GET", "POST", "PUT", "DELETE", "OPTIONS"));
+        configuration.setAllowedHeaders(List.of("Authorization", "Content-Type", "X-Requested-With"));
+        configuration.setAllowCredentials(true);
+
+        UrlBasedCorsConfigurationSource source = new UrlBasedCorsConfigurationSource();
+        source.registerCorsConfiguration("/**", configuration);
+        return source;
+    }
+}
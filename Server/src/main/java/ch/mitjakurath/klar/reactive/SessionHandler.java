@@ -0,0 +1,151 @@
+package ch.mitjakurath.klar.reactive;
+
+import ch.mitjakurath.klar.controller.SessionController;
+import ch.mitjakurath.klar.dto.CursorPage;
+import ch.mitjakurath.klar.dto.SessionRequest;
+import ch.mitjakurath.klar.dto.SessionStartRequest;
+import ch.mitjakurath.klar.model.PomodoroSession;
+import ch.mitjakurath.klar.repository.PageCursor;
+import ch.mitjakurath.klar.repository.ReactivePomodoroSessionRepository;
+import ch.mitjakurath.klar.service.CollectionVersions;
+import ch.mitjakurath.klar.service.PomodoroSessionService;
+import ch.mitjakurath.klar.service.SessionHistory;
+import ch.mitjakurath.klar.util.SparseFields;
+import jakarta.validation.Validator;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Set;
+import java.util.function.Supplier;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Mono;
+
+/**
+ * Session API of the {@code reactive} profile, see {@link SessionController} for the contract.
+ */
+@Component
+@Profile("reactive")
+public class SessionHandler {
+
+    @Autowired
+    private ReactivePomodoroSessionRepository reactiveSessionRepository;
+
+    @Autowired
+    private PomodoroSessionService sessionService;
+
+    @Autowired
+    private CollectionVersions versions;
+
+    @Autowired
+    private SessionHistory sessionHistory;
+
+    @Autowired
+    private Validator validator;
+
+    @Value("${app.api.legacy-unpaged-lists:true}")
+    private boolean legacyUnpagedLists;
+
+    public Mono<ServerResponse> startSession(ServerRequest request) {
+        String userId = Handlers.userId(request);
+        return request.bodyToMono(SessionStartRequest.class)
+                .map(body -> Handlers.validate(validator, body))
+                .flatMap(body -> Handlers.blocking(
+                        () -> sessionService.startSession(userId, body.duration(), body.type(), body.taskId())))
+                .flatMap(session -> ServerResponse.ok().bodyValue(session));
+    }
+
+    public Mono<ServerResponse> updateSession(ServerRequest request) {
+        String userId = Handlers.userId(request);
+        String id = request.pathVariable("id");
+        return request.bodyToMono(SessionRequest.class)
+                .map(body -> Handlers.validate(validator, body))
+                .flatMap(body -> findOwner(id, userId, () -> Handlers.blocking(
+                        () -> sessionService.updateSession(body.toSession(id, userId)))
+                        .flatMap(updatedSession -> ServerResponse.ok().bodyValue(updatedSession))));
+    }
+
+    public Mono<ServerResponse> completeSession(ServerRequest request) {
+        String userId = Handlers.userId(request);
+        String id = request.pathVariable("id");
+        return Handlers.blocking(() -> sessionService.completeSession(id, userId))
+                .flatMap(completed -> completed
+                        .map(session -> ServerResponse.ok().bodyValue(session))
+                        .orElseGet(() -> findOwned(id, userId, () -> ServerResponse.status(HttpStatus.FORBIDDEN).build())));
+    }
+
+    public Mono<ServerResponse> getUserSessions(ServerRequest request) {
+        String userId = Handlers.userId(request);
+        Integer limit = Handlers.parameter(() -> request.queryParam("limit").map(Integer::valueOf).orElse(null));
+        String cursor = request.queryParam("cursor").orElse(null);
+        String fields = request.queryParam("fields").orElse(null);
+        boolean includeArchived = request.queryParam("includeArchived").map(Boolean::parseBoolean).orElse(false);
+
+        Mono<String> etag = versions.reactiveEtag(userId, CollectionVersions.SESSIONS);
+        return Handlers.conditional(request, etag, ok -> {
+            if (legacyUnpagedLists && limit == null && cursor == null && fields == null && !includeArchived) {
+                return ok.body(reactiveSessionRepository.findByUserIdOrderByCreatedAtDesc(userId), PomodoroSession.class);
+            }
+
+            PageCursor after = Handlers.parameter(() -> cursor != null ? PageCursor.decode(cursor) : null);
+            Set<String> selectedFields = Handlers.parameter(
+                    () -> SparseFields.parse(fields, SessionController.LISTED_FIELDS));
+            int pageLimit = CursorPage.limit(limit);
+
+            if (includeArchived) {
+                return Handlers.blocking(() -> sessionService.getSessionsPage(userId, after, pageLimit, selectedFields, true))
+                        .flatMap(page -> ok.bodyValue(SparseFields.select(page, selectedFields)));
+            }
+            return reactiveSessionRepository.findPage(userId, after, pageLimit + 1, selectedFields)
+                    .collectList()
+                    .map(sessions -> CursorPage.of(sessions, pageLimit,
+                            last -> new PageCursor(last.getCreatedAt(), last.getId()).encode()))
+                    .flatMap(page -> ok.bodyValue(SparseFields.select(page, selectedFields)));
+        });
+    }
+
+    public Mono<ServerResponse> getTodaySessions(ServerRequest request) {
+        String userId = Handlers.userId(request);
+
+        LocalDate today = LocalDate.now();
+        Mono<String> etag = versions.reactiveEtag(userId, CollectionVersions.SESSIONS, today);
+        return Handlers.conditional(request, etag, ok -> {
+            if (sessionHistory.isReady()) {
+                return Handlers.blocking(() -> sessionService.getTodaySessions(userId)).flatMap(ok::bodyValue);
+            }
+            LocalDateTime startOfDay = today.atStartOfDay();
+            return ok.body(reactiveSessionRepository.findByUserIdAndStartTimeBetweenOrderByStartTimeDesc(
+                    userId, startOfDay, startOfDay.plusDays(1)), PomodoroSession.class);
+        });
+    }
+
+    public Mono<ServerResponse> getFocusTimeStats(ServerRequest request) {
+        String userId = Handlers.userId(request);
+        String period = request.pathVariable("period");
+
+        Mono<String> etag = versions.reactiveEtag(userId, CollectionVersions.SESSIONS, LocalDate.now());
+        return Handlers.conditional(request, etag, ok -> Handlers.blocking(() -> sessionService.getFocusTimeStats(userId, period))
+                .flatMap(ok::bodyValue));
+    }
+
+    private Mono<ServerResponse> findOwner(String id, String userId, Supplier<Mono<ServerResponse>> action) {
+        return Handlers.blocking(() -> sessionService.getSessionOwner(id))
+                .flatMap(owner -> owner
+                        .map(ownerId -> ownerId.equals(userId)
+                                ? action.get()
+                                : ServerResponse.status(HttpStatus.FORBIDDEN).build())
+                        .orElseGet(() -> Mono.error(new RuntimeException("Session not found"))));
+    }
+
+    private Mono<ServerResponse> findOwned(String id, String userId, Supplier<Mono<ServerResponse>> action) {
+        return reactiveSessionRepository.findById(id)
+                .switchIfEmpty(Mono.error(() -> new RuntimeException("Session not found")))
+                .flatMap(existingSession -> existingSession.getUserId().equals(userId)
+                        ? action.get()
+                        : ServerResponse.status(HttpStatus.FORBIDDEN).build());
+    }
+}
@@ -0,0 +1,44 @@
+package ch.mitjakurath.klar.reactive;
+
+import ch.mitjakurath.klar.model.UserSettings;
+import ch.mitjakurath.klar.service.CollectionVersions;
+import ch.mitjakurath.klar.service.UserSettingsService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Mono;
+
+/**
+ * Settings API of the {@code reactive} profile. Reads come from the settings cache, which loads misses on
+ * its own threads, so they never block the event loop.
+ */
+@Component
+@Profile("reactive")
+public class SettingsHandler {
+
+    @Autowired
+    private UserSettingsService settingsService;
+
+    @Autowired
+    private CollectionVersions versions;
+
+    public Mono<ServerResponse> getUserSettings(ServerRequest request) {
+        String userId = Handlers.userId(request);
+
+        return versions.reactiveEtag(userId, CollectionVersions.SETTINGS)
+                .flatMap(etag -> Handlers.conditional(request, etag, ok -> Mono.fromFuture(
+                        () -> settingsService.getUserSettingsAsync(userId, etag)).flatMap(ok::bodyValue)));
+    }
+
+    public Mono<ServerResponse> updateUserSettings(ServerRequest request) {
+        String userId = Handlers.userId(request);
+        return request.bodyToMono(UserSettings.class)
+                .flatMap(settings -> {
+                    settings.setUserId(userId);
+                    return Handlers.blocking(() -> settingsService.updateUserSettings(settings));
+                })
+                .flatMap(updatedSettings -> ServerResponse.ok().bodyValue(updatedSettings));
+    }
+}
@@ -0,0 +1,26 @@
+package ch.mitjakurath.klar.reactive;
+
+import ch.mitjakurath.klar.service.UserEventBus;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Mono;
+
+@Component
+@Profile("reactive")
+public class StreamHandler {
+
+    @Autowired
+    private UserEventBus eventBus;
+
+    public Mono<ServerResponse> stream(ServerRequest request) {
+        String userId = Handlers.userId(request);
+        return ServerResponse.ok()
+                .contentType(MediaType.TEXT_EVENT_STREAM)
+                .body(BodyInserters.fromServerSentEvents(eventBus.subscribeFlux(userId)));
+    }
+}
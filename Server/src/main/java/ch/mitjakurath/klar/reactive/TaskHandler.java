@@ -0,0 +1,147 @@
+package ch.mitjakurath.klar.reactive;
+
+import ch.mitjakurath.klar.controller.TaskController;
+import ch.mitjakurath.klar.dto.CursorPage;
+import ch.mitjakurath.klar.dto.TaskBatchRequest;
+import ch.mitjakurath.klar.dto.TaskRequest;
+import ch.mitjakurath.klar.model.Task;
+import ch.mitjakurath.klar.repository.PageCursor;
+import ch.mitjakurath.klar.repository.ReactiveTaskRepository;
+import ch.mitjakurath.klar.service.CollectionVersions;
+import ch.mitjakurath.klar.service.TaskService;
+import ch.mitjakurath.klar.util.SparseFields;
+import jakarta.validation.Validator;
+import java.util.Set;
+import java.util.function.Supplier;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Mono;
+
+/**
+ * Task API of the {@code reactive} profile, see {@link TaskController} for the contract. Lists are read
+ * with the reactive driver and streamed; writes go through {@link TaskService} on the bounded elastic pool.
+ */
+@Component
+@Profile("reactive")
+public class TaskHandler {
+
+    @Autowired
+    private ReactiveTaskRepository reactiveTaskRepository;
+
+    @Autowired
+    private TaskService taskService;
+
+    @Autowired
+    private CollectionVersions versions;
+
+    @Autowired
+    private Validator validator;
+
+    @Value("${app.api.legacy-unpaged-lists:true}")
+    private boolean legacyUnpagedLists;
+
+    public Mono<ServerResponse> getAllTasks(ServerRequest request) {
+        String userId = Handlers.userId(request);
+        Integer limit = Handlers.parameter(() -> request.queryParam("limit").map(Integer::valueOf).orElse(null));
+        String cursor = request.queryParam("cursor").orElse(null);
+        String fields = request.queryParam("fields").orElse(null);
+        boolean includeArchived = request.queryParam("includeArchived").map(Boolean::parseBoolean).orElse(false);
+
+        Mono<String> etag = versions.reactiveEtag(userId, CollectionVersions.TASKS);
+        return Handlers.conditional(request, etag, ok -> {
+            if (legacyUnpagedLists && limit == null && cursor == null && fields == null && !includeArchived) {
+                return ok.body(reactiveTaskRepository.findByUserIdOrderByCreatedAtDesc(userId), Task.class);
+            }
+
+            PageCursor after = Handlers.parameter(() -> cursor != null ? PageCursor.decode(cursor) : null);
+            Set<String> selectedFields = Handlers.parameter(
+                    () -> SparseFields.parse(fields, TaskController.LISTED_FIELDS));
+            int pageLimit = CursorPage.limit(limit);
+
+            if (includeArchived) {
+                return Handlers.blocking(() -> taskService.getTasksPage(userId, after, pageLimit, selectedFields, true))
+                        .flatMap(page -> ok.bodyValue(SparseFields.select(page, selectedFields)));
+            }
+            return reactiveTaskRepository.findPage(userId, after, pageLimit + 1, selectedFields)
+                    .collectList()
+                    .map(tasks -> CursorPage.of(tasks, pageLimit,
+                            last -> new PageCursor(last.getCreatedAt(), last.getId()).encode()))
+                    .flatMap(page -> ok.bodyValue(SparseFields.select(page, selectedFields)));
+        });
+    }
+
+    public Mono<ServerResponse> createTask(ServerRequest request) {
+        String userId = Handlers.userId(request);
+        return request.bodyToMono(TaskRequest.class)
+                .map(body -> Handlers.validate(validator, body))
+                .flatMap(body -> Handlers.blocking(() -> taskService.createTask(body.toTask(null, userId))))
+                .flatMap(createdTask -> ServerResponse.ok().bodyValue(createdTask));
+    }
+
+    public Mono<ServerResponse> updateTask(ServerRequest request) {
+        String userId = Handlers.userId(request);
+        String id = request.pathVariable("id");
+        return request.bodyToMono(TaskRequest.class)
+                .map(body -> Handlers.validate(validator, body))
+                .flatMap(body -> findOwned(id, userId, () -> Handlers.blocking(
+                        () -> taskService.updateTask(body.toTask(id, userId)))
+                        .flatMap(updatedTask -> ServerResponse.ok().bodyValue(updatedTask))));
+    }
+
+    public Mono<ServerResponse> deleteTask(ServerRequest request) {
+        String userId = Handlers.userId(request);
+        String id = request.pathVariable("id");
+        return findOwned(id, userId, () -> Handlers.blocking(() -> {
+            taskService.deleteTask(id);
+            return id;
+        }).then(ServerResponse.ok().build()));
+    }
+
+    public Mono<ServerResponse> toggleTask(ServerRequest request) {
+        String userId = Handlers.userId(request);
+        String id = request.pathVariable("id");
+        return Handlers.blocking(() -> taskService.toggleTaskCompletion(id, userId))
+                .flatMap(toggled -> toggled
+                        .map(task -> ServerResponse.ok().bodyValue(task))
+                        .orElseGet(() -> findOwned(id, userId, () -> ServerResponse.status(HttpStatus.FORBIDDEN).build())));
+    }
+
+    public Mono<ServerResponse> batch(ServerRequest request) {
+        String userId = Handlers.userId(request);
+        return request.bodyToMono(TaskBatchRequest.class)
+                .flatMap(batch -> {
+                    if (batch.operations() == null || batch.operations().size() > TaskBatchRequest.MAX_OPERATIONS) {
+                        return ServerResponse.badRequest().build();
+                    }
+                    return Handlers.blocking(() -> taskService.applyBatch(userId, batch.operations()))
+                            .flatMap(results -> ServerResponse.ok().bodyValue(results));
+                });
+    }
+
+    public Mono<ServerResponse> getTaskStats(ServerRequest request) {
+        String userId = Handlers.userId(request);
+
+        // today's and overdue counts depend on the clock, so the ETag changes every minute as well
+        long minute = System.currentTimeMillis() / 60_000;
+        Mono<String> etag = versions.reactiveEtag(userId, CollectionVersions.TASKS, "stats", Long.toString(minute, 36));
+        return Handlers.conditional(request, etag, ok -> Handlers.blocking(() -> taskService.getTaskStats(userId))
+                .flatMap(ok::bodyValue));
+    }
+
+    /**
+     * Runs {@code action} if the task belongs to the user, else answers with 403. Fails like the servlet API
+     * if there is no such task.
+     */
+    private Mono<ServerResponse> findOwned(String id, String userId, Supplier<Mono<ServerResponse>> action) {
+        return reactiveTaskRepository.findById(id)
+                .switchIfEmpty(Mono.error(() -> new RuntimeException("Task not found")))
+                .flatMap(existingTask -> existingTask.getUserId().equals(userId)
+                        ? action.get()
+                        : ServerResponse.status(HttpStatus.FORBIDDEN).build());
+    }
+}
@@ -0,0 +1,48 @@
+package ch.mitjakurath.klar.repository;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Base64;
+import java.util.Comparator;
+
+/**
+ * Keyset position in the changes of a collection sorted by modification time and {@code _id}, both ascending.
+ * Without an id it stands for everything changed at {@code time} or later.
+ */
+public record ChangeCursor(LocalDateTime time, String id) implements Comparable<ChangeCursor> {
+
+    private static final Comparator<ChangeCursor> ORDER = Comparator.comparing(ChangeCursor::time)
+            .thenComparing(ChangeCursor::id, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+    public static ChangeCursor from(LocalDateTime time) {
+        return new ChangeCursor(time, null);
+    }
+
+    @Override
+    public int compareTo(ChangeCursor other) {
+        return ORDER.compare(this, other);
+    }
+
+    public String encode() {
+        long millis = time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        String value = id == null ? Long.toString(millis) : millis + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static ChangeCursor decode(String cursor) {
+        try {
+            String value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = value.indexOf(':');
+            String millis = separator < 0 ? value : value.substring(0, separator);
+            LocalDateTime time = LocalDateTime.ofInstant(
+                    Instant.ofEpochMilli(Long.parseLong(millis)),
+                    ZoneId.systemDefault()
+            );
+            return new ChangeCursor(time, separator < 0 ? null : value.substring(separator + 1));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+        }
+    }
+}
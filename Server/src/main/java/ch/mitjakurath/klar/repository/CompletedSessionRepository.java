@@ -0,0 +1,13 @@
+package ch.mitjakurath.klar.repository;
+
+import ch.mitjakurath.klar.model.CompletedSession;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface CompletedSessionRepository extends MongoRepository<CompletedSession, String>, CompletedSessionRepositoryCustom {
+    List<CompletedSession> findByUserIdAndStartTimeBetweenOrderByStartTimeDesc(String userId, LocalDateTime start, LocalDateTime end);
+}
@@ -0,0 +1,10 @@
+package ch.mitjakurath.klar.repository;
+
+import ch.mitjakurath.klar.repository.PomodoroSessionRepositoryCustom.FocusTimeAggregate;
+
+import java.time.LocalDateTime;
+
+public interface CompletedSessionRepositoryCustom {
+
+    FocusTimeAggregate aggregateFocusTime(String userId, LocalDateTime start, LocalDateTime end);
+}
@@ -0,0 +1,22 @@
+package ch.mitjakurath.klar.repository;
+
+import ch.mitjakurath.klar.model.CompletedSession;
+import ch.mitjakurath.klar.repository.PomodoroSessionRepositoryCustom.FocusTimeAggregate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.time.LocalDateTime;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+public class CompletedSessionRepositoryImpl implements CompletedSessionRepositoryCustom {
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Override
+    public FocusTimeAggregate aggregateFocusTime(String userId, LocalDateTime start, LocalDateTime end) {
+        return PomodoroSessionRepositoryImpl.aggregateFocusTime(mongoTemplate, CompletedSession.class,
+                where("userId").is(userId).and("startTime").gte(start).lt(end));
+    }
+}
@@ -0,0 +1,14 @@
+package ch.mitjakurath.klar.repository;
+
+import ch.mitjakurath.klar.model.DailyUserStats;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface DailyUserStatsRepository extends MongoRepository<DailyUserStats, String> {
+    @Query("{ 'userId': ?0, 'day': { $gte: ?1, $lte: ?2 } }")
+    List<DailyUserStats> findByUserIdAndDayRange(String userId, String fromDay, String toDay);
+}
@@ -0,0 +1,49 @@
+package ch.mitjakurath.klar.repository;
+
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.Set;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+final class KeysetQueries {
+
+    private KeysetQueries() {}
+
+    static Query pageQuery(String userId, PageCursor after, int limit, Set<String> fields) {
+        Criteria criteria = where("userId").is(userId);
+        if (after != null) {
+            criteria.orOperator(
+                    where("createdAt").lt(after.createdAt()),
+                    where("createdAt").is(after.createdAt()).and("_id").lt(after.id())
+            );
+        }
+
+        Query query = new Query(criteria)
+                .with(Sort.by(Sort.Direction.DESC, "createdAt", "_id"))
+                .limit(limit);
+
+        if (fields != null && !fields.isEmpty()) {
+            query.fields().include("_id", "createdAt");
+            fields.forEach(field -> query.fields().include(field));
+        }
+        return query;
+    }
+
+    static Query changesQuery(String userId, String timeField, ChangeCursor after, int limit) {
+        Criteria criteria = where("userId").is(userId);
+        if (after.id() == null) {
+            criteria.and(timeField).gte(after.time());
+        } else {
+            criteria.orOperator(
+                    where(timeField).gt(after.time()),
+                    where(timeField).is(after.time()).and("_id").gt(after.id())
+            );
+        }
+        return new Query(criteria)
+                .with(Sort.by(Sort.Direction.ASC, timeField, "_id"))
+                .limit(limit);
+    }
+}
@@ -0,0 +1,52 @@
+package ch.mitjakurath.klar.repository;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Keyset position in a listing sorted by {@code createdAt} and {@code _id}, both descending.
+ */
+public record PageCursor(LocalDateTime createdAt, String id) {
+
+    private static final Comparator<PageCursor> NEWEST_FIRST =
+            Comparator.comparing(PageCursor::createdAt).thenComparing(PageCursor::id).reversed();
+
+    /**
+     * Merges two listings read with the same cursor and limit, e.g. from a collection and its archive, into
+     * the first {@code limit} items of their union.
+     */
+    public static <T> List<T> merge(List<T> first, List<T> second, int limit, Function<T, PageCursor> cursorOf) {
+        List<T> merged = new ArrayList<>(first.size() + second.size());
+        merged.addAll(first);
+        merged.addAll(second);
+        merged.sort(Comparator.comparing(cursorOf, NEWEST_FIRST));
+        return merged.size() > limit ? merged.subList(0, limit) : merged;
+    }
+
+    public String encode() {
+        long millis = createdAt.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((millis + ":" + id).getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static PageCursor decode(String cursor) {
+        try {
+            String value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = value.indexOf(':');
+            LocalDateTime createdAt = LocalDateTime.ofInstant(
+                    Instant.ofEpochMilli(Long.parseLong(value.substring(0, separator))),
+                    ZoneId.systemDefault()
+            );
+            return new PageCursor(createdAt, value.substring(separator + 1));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+        }
+    }
+}
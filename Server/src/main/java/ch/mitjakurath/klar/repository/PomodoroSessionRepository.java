@@ -8,8 +8,9 @@ import java.time.LocalDateTime;
 import java.util.List;
 
 @Repository
-public interface PomodoroSessionRepository extends MongoRepository<PomodoroSession, String> {
+public interface PomodoroSessionRepository extends MongoRepository<PomodoroSession, String>, PomodoroSessionRepositoryCustom {
     List<PomodoroSession> findByUserIdOrderByCreatedAtDesc(String userId);
     List<PomodoroSession> findByUserIdAndStartTimeBetweenOrderByStartTimeDesc(String userId, LocalDateTime start, LocalDateTime end);
+    List<PomodoroSession> findByUserIdAndCompletedAndStartTimeBetweenOrderByStartTimeDesc(String userId, boolean completed, LocalDateTime start, LocalDateTime end);
     long countByUserIdAndCompletedAndStartTimeBetween(String userId, boolean completed, LocalDateTime start, LocalDateTime end);
 }
\ No newline at end of file
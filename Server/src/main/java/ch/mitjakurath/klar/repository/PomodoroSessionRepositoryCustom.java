@@ -0,0 +1,61 @@
+package ch.mitjakurath.klar.repository;
+
+import ch.mitjakurath.klar.model.PomodoroSession;
+import org.springframework.data.annotation.Id;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+public interface PomodoroSessionRepositoryCustom {
+
+    /**
+     * Replaces the stored session (inserting it if missing) and returns the previous version, or {@code null}.
+     */
+    PomodoroSession replace(PomodoroSession session);
+
+    /**
+     * Replaces the stored sessions in one bulk write and returns the previous versions of those that were
+     * replaced, in no particular order. A session is only replaced if it is still stored, has not been updated
+     * after the replacement and is not completed, unless the replacement is; missing sessions are not inserted.
+     */
+    List<PomodoroSession> replaceAll(Collection<PomodoroSession> sessions);
+
+    /**
+     * Atomically marks the session as completed if it is owned by {@code userId}, setting {@code endTime}
+     * to {@code now} unless it already has one. Returns the session as it was before, or {@code null} if
+     * no such session is owned by the user.
+     */
+    PomodoroSession complete(String sessionId, String userId, LocalDateTime now);
+
+    /**
+     * Returns up to {@code limit} sessions created before {@code after} (or the newest ones if it is {@code null}),
+     * newest first. If {@code fields} is not empty only those fields, the id and createdAt are loaded.
+     */
+    List<PomodoroSession> findPage(String userId, PageCursor after, int limit, Set<String> fields);
+
+    /**
+     * Like {@link #findPage}, but reads the archived sessions in {@code PomodoroSession.ARCHIVE}.
+     */
+    List<PomodoroSession> findArchivedPage(String userId, PageCursor after, int limit, Set<String> fields);
+
+    /**
+     * Returns up to {@code limit} of the user's sessions after {@code after} by {@code updatedAt}, oldest first.
+     */
+    List<PomodoroSession> findChanges(String userId, ChangeCursor after, int limit);
+
+    /**
+     * Sets {@code updatedAt} to {@code createdAt} on the user's sessions that were stored before sessions
+     * tracked modification times, so they show up in a full sync.
+     */
+    long backfillUpdatedAt(String userId);
+
+    FocusTimeAggregate aggregateFocusTime(String userId, LocalDateTime start, LocalDateTime end);
+
+    record FocusTimeAggregate(List<TypeTotal> byType, List<DayTotal> byDay) {}
+
+    record TypeTotal(@Id String type, long minutes, long sessions) {}
+
+    record DayTotal(@Id String date, long minutes, long sessions) {}
+}
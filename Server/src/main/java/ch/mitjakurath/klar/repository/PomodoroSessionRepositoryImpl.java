@@ -0,0 +1,179 @@
+package ch.mitjakurath.klar.repository;
+
+import ch.mitjakurath.klar.model.PomodoroSession;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.aggregation.DateOperators;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.facet;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.group;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.match;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.newAggregation;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.project;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.sort;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+public class PomodoroSessionRepositoryImpl implements PomodoroSessionRepositoryCustom {
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Override
+    public PomodoroSession replace(PomodoroSession session) {
+        return mongoTemplate.findAndReplace(
+                query(where("_id").is(session.getId())),
+                session,
+                FindAndReplaceOptions.options().upsert()
+        );
+    }
+
+    @Override
+    public List<PomodoroSession> replaceAll(Collection<PomodoroSession> sessions) {
+        List<String> ids = sessions.stream().map(PomodoroSession::getId).toList();
+        Map<String, PomodoroSession> stored = new HashMap<>();
+        mongoTemplate.find(query(where("_id").in(ids)), PomodoroSession.class)
+                .forEach(session -> stored.put(session.getId(), session));
+
+        Map<PomodoroSession, PomodoroSession> replacing = new LinkedHashMap<>();
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, PomodoroSession.class);
+        for (PomodoroSession session : sessions) {
+            PomodoroSession previous = stored.get(session.getId());
+            // deleted or archived meanwhile, completed on another instance, or updated after this version
+            if (previous == null
+                    || previous.isCompleted() && !session.isCompleted()
+                    || isAfter(previous.getUpdatedAt(), session.getUpdatedAt())) {
+                continue;
+            }
+            // only replaces the version the checks were made on
+            bulk.replaceOne(
+                    query(where("_id").is(session.getId()).and("updatedAt").is(previous.getUpdatedAt())), session);
+            replacing.put(session, previous);
+        }
+        if (replacing.isEmpty()) {
+            return List.of();
+        }
+        if (bulk.execute().getMatchedCount() == replacing.size()) {
+            return List.copyOf(replacing.values());
+        }
+
+        // some were updated between the read and the write; those now holding this version were replaced
+        Query written = query(where("_id").in(replacing.values().stream().map(PomodoroSession::getId).toList()));
+        written.fields().include("updatedAt");
+        Map<String, LocalDateTime> updatedAt = new HashMap<>();
+        mongoTemplate.find(written, PomodoroSession.class)
+                .forEach(session -> updatedAt.put(session.getId(), session.getUpdatedAt()));
+        List<PomodoroSession> replaced = new ArrayList<>();
+        replacing.forEach((session, previous) -> {
+            LocalDateTime version = session.getUpdatedAt();
+            if (version != null && version.truncatedTo(ChronoUnit.MILLIS).equals(updatedAt.get(session.getId()))) {
+                replaced.add(previous);
+            }
+        });
+        return replaced;
+    }
+
+    private static boolean isAfter(LocalDateTime stored, LocalDateTime replacement) {
+        return stored != null && replacement != null && stored.isAfter(replacement);
+    }
+
+    @Override
+    public PomodoroSession complete(String sessionId, String userId, LocalDateTime dateTime) {
+        Date now = Date.from(dateTime.atZone(ZoneId.systemDefault()).toInstant());
+        Document complete = new Document("$set", new Document()
+                .append("completed", true)
+                .append("endTime", new Document("$ifNull", List.of("$endTime", now)))
+                .append("updatedAt", now));
+
+        return mongoTemplate.findAndModify(
+                query(where("_id").is(sessionId).and("userId").is(userId)),
+                AggregationUpdate.from(List.of(context -> complete)),
+                FindAndModifyOptions.options().returnNew(false),
+                PomodoroSession.class
+        );
+    }
+
+    @Override
+    public List<PomodoroSession> findPage(String userId, PageCursor after, int limit, Set<String> fields) {
+        return mongoTemplate.find(KeysetQueries.pageQuery(userId, after, limit, fields), PomodoroSession.class);
+    }
+
+    @Override
+    public List<PomodoroSession> findArchivedPage(String userId, PageCursor after, int limit, Set<String> fields) {
+        return mongoTemplate.find(KeysetQueries.pageQuery(userId, after, limit, fields), PomodoroSession.class, PomodoroSession.ARCHIVE);
+    }
+
+    @Override
+    public List<PomodoroSession> findChanges(String userId, ChangeCursor after, int limit) {
+        return mongoTemplate.find(KeysetQueries.changesQuery(userId, "updatedAt", after, limit), PomodoroSession.class);
+    }
+
+    @Override
+    public long backfillUpdatedAt(String userId) {
+        Document backfill = new Document("$set", new Document("updatedAt", "$createdAt"));
+
+        return mongoTemplate.updateMulti(
+                query(where("userId").is(userId).and("updatedAt").exists(false)),
+                AggregationUpdate.from(List.of(context -> backfill)),
+                PomodoroSession.class
+        ).getModifiedCount();
+    }
+
+    @Override
+    public FocusTimeAggregate aggregateFocusTime(String userId, LocalDateTime start, LocalDateTime end) {
+        return aggregateFocusTime(mongoTemplate, PomodoroSession.class, where("userId").is(userId)
+                .and("startTime").gte(start).lt(end)
+                .and("completed").is(true));
+    }
+
+    /**
+     * Groups the completed sessions matching {@code completed} by type and, for work sessions, by day.
+     */
+    static FocusTimeAggregate aggregateFocusTime(MongoTemplate mongoTemplate, Class<?> collection, Criteria completed) {
+        // LocalDateTime values are stored as instants in the server's zone, so days are bucketed in that zone too.
+        DateOperators.Timezone timezone = DateOperators.Timezone.valueOf(ZoneId.systemDefault().getId());
+
+        Aggregation aggregation = newAggregation(
+                match(completed),
+                facet(
+                        group("type").sum("duration").as("minutes").count().as("sessions")
+                ).as("byType").and(
+                        match(where("type").is("work")),
+                        project("duration").and(
+                                DateOperators.DateToString.dateOf("startTime")
+                                        .toString("%Y-%m-%d")
+                                        .withTimezone(timezone)
+                        ).as("date"),
+                        group("date").sum("duration").as("minutes").count().as("sessions"),
+                        sort(Sort.Direction.ASC, "_id")
+                ).as("byDay")
+        );
+
+        FocusTimeAggregate result = mongoTemplate
+                .aggregate(aggregation, collection, FocusTimeAggregate.class)
+                .getUniqueMappedResult();
+
+        return result != null ? result : new FocusTimeAggregate(List.of(), List.of());
+    }
+}
@@ -0,0 +1,19 @@
+package ch.mitjakurath.klar.repository;
+
+import ch.mitjakurath.klar.model.PomodoroSession;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+
+import java.time.LocalDateTime;
+
+/**
+ * Read side of the session API in the {@code reactive} profile. Writes still go through
+ * {@link PomodoroSessionRepository} via {@code PomodoroSessionService}.
+ */
+@Repository
+public interface ReactivePomodoroSessionRepository
+        extends ReactiveMongoRepository<PomodoroSession, String>, ReactivePomodoroSessionRepositoryCustom {
+    Flux<PomodoroSession> findByUserIdOrderByCreatedAtDesc(String userId);
+    Flux<PomodoroSession> findByUserIdAndStartTimeBetweenOrderByStartTimeDesc(String userId, LocalDateTime start, LocalDateTime end);
+}
@@ -0,0 +1,14 @@
+package ch.mitjakurath.klar.repository;
+
+import ch.mitjakurath.klar.model.PomodoroSession;
+import reactor.core.publisher.Flux;
+
+import java.util.Set;
+
+public interface ReactivePomodoroSessionRepositoryCustom {
+
+    /**
+     * Reactive counterpart of {@link PomodoroSessionRepositoryCustom#findPage}.
+     */
+    Flux<PomodoroSession> findPage(String userId, PageCursor after, int limit, Set<String> fields);
+}
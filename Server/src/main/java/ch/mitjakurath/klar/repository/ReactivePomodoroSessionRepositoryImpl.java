@@ -0,0 +1,19 @@
+package ch.mitjakurath.klar.repository;
+
+import ch.mitjakurath.klar.model.PomodoroSession;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import reactor.core.publisher.Flux;
+
+import java.util.Set;
+
+public class ReactivePomodoroSessionRepositoryImpl implements ReactivePomodoroSessionRepositoryCustom {
+
+    @Autowired
+    private ReactiveMongoTemplate mongoTemplate;
+
+    @Override
+    public Flux<PomodoroSession> findPage(String userId, PageCursor after, int limit, Set<String> fields) {
+        return mongoTemplate.find(KeysetQueries.pageQuery(userId, after, limit, fields), PomodoroSession.class);
+    }
+}
@@ -0,0 +1,15 @@
+package ch.mitjakurath.klar.repository;
+
+import ch.mitjakurath.klar.model.Task;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+
+/**
+ * Read side of the task API in the {@code reactive} profile. Writes still go through {@link TaskRepository}
+ * via {@code TaskService}, so rollups, events and tombstones stay in one place.
+ */
+@Repository
+public interface ReactiveTaskRepository extends ReactiveMongoRepository<Task, String>, ReactiveTaskRepositoryCustom {
+    Flux<Task> findByUserIdOrderByCreatedAtDesc(String userId);
+}
@@ -0,0 +1,14 @@
+package ch.mitjakurath.klar.repository;
+
+import ch.mitjakurath.klar.model.Task;
+import reactor.core.publisher.Flux;
+
+import java.util.Set;
+
+public interface ReactiveTaskRepositoryCustom {
+
+    /**
+     * Reactive counterpart of {@link TaskRepositoryCustom#findPage}.
+     */
+    Flux<Task> findPage(String userId, PageCursor after, int limit, Set<String> fields);
+}
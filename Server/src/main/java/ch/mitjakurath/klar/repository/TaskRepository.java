@@ -8,10 +8,12 @@ import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface TaskRepository extends MongoRepository<Task, String> {
+public interface TaskRepository extends MongoRepository<Task, String>, TaskRepositoryCustom {
     List<Task> findByUserIdOrderByCreatedAtDesc(String userId);
     List<Task> findByUserIdAndCompletedOrderByCreatedAtDesc(String userId, boolean completed);
     long countByUserIdAndCompleted(String userId, boolean completed);
     long countByUserIdAndCompletedAndCreatedAtBetween(String userId, boolean completed, LocalDateTime start, LocalDateTime end);
     long countByUserId(String userId);
+    long countByUserIdAndCompletedAndDueDateBefore(String userId, boolean completed, LocalDateTime dueDate);
+    Task removeById(String id);
 }
\ No newline at end of file
@@ -0,0 +1,68 @@
+package ch.mitjakurath.klar.repository;
+
+import ch.mitjakurath.klar.model.Task;
+import org.springframework.data.annotation.Id;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+
+public interface TaskRepositoryCustom {
+
+    /**
+     * Replaces the stored task (inserting it if missing) and returns the previous version, or {@code null}.
+     */
+    Task replace(Task task);
+
+    /**
+     * Atomically flips the completion state of the task if it is owned by {@code userId}, stamping
+     * {@code completedAt} and {@code updatedAt} with {@code now}. Returns the task as it was before the
+     * toggle, or {@code null} if no such task is owned by the user.
+     */
+    Task toggleCompletion(String taskId, String userId, LocalDateTime now);
+
+    /**
+     * Returns up to {@code limit} tasks created before {@code after} (or the newest ones if it is {@code null}),
+     * newest first. If {@code fields} is not empty only those fields, the id and createdAt are loaded.
+     */
+    List<Task> findPage(String userId, PageCursor after, int limit, Set<String> fields);
+
+    /**
+     * Like {@link #findPage}, but reads the archived tasks in {@code Task.ARCHIVE}.
+     */
+    List<Task> findArchivedPage(String userId, PageCursor after, int limit, Set<String> fields);
+
+    /**
+     * Returns up to {@code limit} of the user's tasks after {@code after} by {@code updatedAt}, oldest first.
+     */
+    List<Task> findChanges(String userId, ChangeCursor after, int limit);
+
+    TaskStatsAggregate aggregateTaskStats(String userId, LocalDateTime startOfDay, LocalDateTime endOfDay, LocalDateTime now);
+
+    /**
+     * Counts the user's archived tasks by priority. Only completed tasks are archived, so every one of them
+     * is also counted as completed.
+     */
+    List<PriorityTotal> aggregateArchivedTaskStats(String userId);
+
+    record TaskStatsAggregate(
+            List<Count> total,
+            List<Count> completed,
+            List<Count> todayCompleted,
+            List<Count> overdue,
+            List<PriorityTotal> byPriority
+    ) {
+        public long totalCount() { return first(total); }
+        public long completedCount() { return first(completed); }
+        public long todayCompletedCount() { return first(todayCompleted); }
+        public long overdueCount() { return first(overdue); }
+
+        private static long first(List<Count> counts) {
+            return counts == null || counts.isEmpty() ? 0 : counts.get(0).count();
+        }
+    }
+
+    record Count(long count) {}
+
+    record PriorityTotal(@Id String priority, long total, long completed) {}
+}
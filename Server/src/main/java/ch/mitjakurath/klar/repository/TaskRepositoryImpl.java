@@ -0,0 +1,124 @@
+package ch.mitjakurath.klar.repository;
+
+import ch.mitjakurath.klar.model.Task;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.aggregation.ConditionalOperators;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.count;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.facet;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.group;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.match;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.newAggregation;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+public class TaskRepositoryImpl implements TaskRepositoryCustom {
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Override
+    public Task replace(Task task) {
+        return mongoTemplate.findAndReplace(
+                query(where("_id").is(task.getId())),
+                task,
+                FindAndReplaceOptions.options().upsert()
+        );
+    }
+
+    @Override
+    public Task toggleCompletion(String taskId, String userId, LocalDateTime dateTime) {
+        Date now = Date.from(dateTime.atZone(ZoneId.systemDefault()).toInstant());
+        Document toggle = new Document("$set", new Document()
+                .append("completedAt", new Document("$cond", List.of("$completed", "$$REMOVE", now)))
+                .append("completed", new Document("$not", List.of("$completed")))
+                .append("updatedAt", now));
+
+        return mongoTemplate.findAndModify(
+                query(where("_id").is(taskId).and("userId").is(userId)),
+                AggregationUpdate.from(List.of(context -> toggle)),
+                FindAndModifyOptions.options().returnNew(false),
+                Task.class
+        );
+    }
+
+    @Override
+    public List<Task> findPage(String userId, PageCursor after, int limit, Set<String> fields) {
+        return mongoTemplate.find(KeysetQueries.pageQuery(userId, after, limit, fields), Task.class);
+    }
+
+    @Override
+    public List<Task> findArchivedPage(String userId, PageCursor after, int limit, Set<String> fields) {
+        return mongoTemplate.find(KeysetQueries.pageQuery(userId, after, limit, fields), Task.class, Task.ARCHIVE);
+    }
+
+    @Override
+    public List<Task> findChanges(String userId, ChangeCursor after, int limit) {
+        return mongoTemplate.find(KeysetQueries.changesQuery(userId, "updatedAt", after, limit), Task.class);
+    }
+
+    @Override
+    public TaskStatsAggregate aggregateTaskStats(
+            String userId,
+            LocalDateTime startOfDay,
+            LocalDateTime endOfDay,
+            LocalDateTime now
+    ) {
+        Aggregation aggregation = newAggregation(
+                match(where("userId").is(userId)),
+                facet(count().as("count")).as("total")
+                        .and(
+                                match(where("completed").is(true)),
+                                count().as("count")
+                        ).as("completed")
+                        .and(
+                                // completed today, however long ago created, as the rollups count it
+                                match(where("completed").is(true)
+                                        .and("completedAt").gte(startOfDay).lt(endOfDay)),
+                                count().as("count")
+                        ).as("todayCompleted")
+                        .and(
+                                match(where("completed").is(false).and("dueDate").lt(now)),
+                                count().as("count")
+                        ).as("overdue")
+                        .and(
+                                group("priority")
+                                        .count().as("total")
+                                        .sum(ConditionalOperators.when(where("completed").is(true))
+                                                .then(1)
+                                                .otherwise(0)).as("completed")
+                        ).as("byPriority")
+        );
+
+        TaskStatsAggregate result = mongoTemplate
+                .aggregate(aggregation, Task.class, TaskStatsAggregate.class)
+                .getUniqueMappedResult();
+
+        return result != null ? result : new TaskStatsAggregate(List.of(), List.of(), List.of(), List.of(), List.of());
+    }
+
+    @Override
+    public List<PriorityTotal> aggregateArchivedTaskStats(String userId) {
+        // covered by the userId_priority index of the archive
+        Aggregation aggregation = newAggregation(
+                match(where("userId").is(userId)),
+                group("priority")
+                        .count().as("total")
+                        .count().as("completed")
+        );
+
+        return mongoTemplate.aggregate(aggregation, Task.ARCHIVE, PriorityTotal.class).getMappedResults();
+    }
+}
@@ -0,0 +1,9 @@
+package ch.mitjakurath.klar.repository;
+
+import ch.mitjakurath.klar.model.Tombstone;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface TombstoneRepository extends MongoRepository<Tombstone, String>, TombstoneRepositoryCustom {
+}
@@ -0,0 +1,13 @@
+package ch.mitjakurath.klar.repository;
+
+import ch.mitjakurath.klar.model.Tombstone;
+
+import java.util.List;
+
+public interface TombstoneRepositoryCustom {
+
+    /**
+     * Returns up to {@code limit} of the user's tombstones after {@code after} by {@code deletedAt}, oldest first.
+     */
+    List<Tombstone> findChanges(String userId, ChangeCursor after, int limit);
+}
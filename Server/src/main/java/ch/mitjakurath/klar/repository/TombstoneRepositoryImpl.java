@@ -0,0 +1,18 @@
+package ch.mitjakurath.klar.repository;
+
+import ch.mitjakurath.klar.model.Tombstone;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.util.List;
+
+public class TombstoneRepositoryImpl implements TombstoneRepositoryCustom {
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Override
+    public List<Tombstone> findChanges(String userId, ChangeCursor after, int limit) {
+        return mongoTemplate.find(KeysetQueries.changesQuery(userId, "deletedAt", after, limit), Tombstone.class);
+    }
+}
@@ -7,6 +7,6 @@ import org.springframework.stereotype.Repository;
 import java.util.Optional;
 
 @Repository
-public interface UserSettingsRepository extends MongoRepository<UserSettings, String> {
+public interface UserSettingsRepository extends MongoRepository<UserSettings, String>, UserSettingsRepositoryCustom {
     Optional<UserSettings> findByUserId(String userId);
 }
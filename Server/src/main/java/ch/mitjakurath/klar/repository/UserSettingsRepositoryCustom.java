@@ -0,0 +1,17 @@
+package ch.mitjakurath.klar.repository;
+
+import ch.mitjakurath.klar.model.UserSettings;
+
+public interface UserSettingsRepositoryCustom {
+
+    /**
+     * Returns the user's settings, atomically inserting the defaults if there are none yet.
+     */
+    UserSettings findOrCreate(String userId);
+
+    /**
+     * Replaces the settings of {@code settings.getUserId()} (inserting them if missing), keeping the stored id,
+     * and returns the new version.
+     */
+    UserSettings replaceByUserId(UserSettings settings);
+}
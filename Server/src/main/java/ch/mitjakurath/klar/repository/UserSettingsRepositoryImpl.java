@@ -0,0 +1,53 @@
+package ch.mitjakurath.klar.repository;
+
+import ch.mitjakurath.klar.model.UserSettings;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+public class UserSettingsRepositoryImpl implements UserSettingsRepositoryCustom {
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Override
+    public UserSettings findOrCreate(String userId) {
+        Query byUser = query(where("userId").is(userId));
+
+        Document defaults = new Document();
+        mongoTemplate.getConverter().write(new UserSettings(userId), defaults);
+        defaults.remove("_id");
+        Update update = new Update();
+        defaults.forEach(update::setOnInsert);
+
+        try {
+            return mongoTemplate.findAndModify(
+                    byUser,
+                    update,
+                    FindAndModifyOptions.options().upsert(true).returnNew(true),
+                    UserSettings.class
+            );
+        } catch (DuplicateKeyException e) {
+            // a concurrent upsert for the same user won the race on the unique userId index
+            return mongoTemplate.findOne(byUser, UserSettings.class);
+        }
+    }
+
+    @Override
+    public UserSettings replaceByUserId(UserSettings settings) {
+        settings.setId(null);
+        return mongoTemplate.findAndReplace(
+                query(where("userId").is(settings.getUserId())),
+                settings,
+                FindAndReplaceOptions.options().upsert().returnNew()
+        );
+    }
+}
@@ -0,0 +1,277 @@
+package ch.mitjakurath.klar.service;
+
+import ch.mitjakurath.klar.model.PomodoroSession;
+import ch.mitjakurath.klar.model.Task;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * Moves completed tasks and sessions older than {@code app.archive.horizon} from {@code tasks} and
+ * {@code pomodoro_sessions} to {@link Task#ARCHIVE} and {@link PomodoroSession#ARCHIVE}, so the active
+ * collections and their indexes only grow with recent data. When enabled it runs every
+ * {@code app.archive.interval}, user by user in batches of {@code batch-size}, on one instance at a time,
+ * which holds a lease in the {@code job_locks} collection.
+ * <p>
+ * A batch is upserted into the archive first, then each document is removed from the active collection if
+ * it has not been updated since it was read; the archived copies of those that were are removed again, so
+ * a run can be interrupted at any point. Archived tasks and sessions stay counted in the rollups, so moving
+ * them writes no increments; stats computed without the rollups add the archived tasks with an aggregation
+ * on {@link Task#ARCHIVE}, and archived sessions stay in the session history. The horizon is at least 31
+ * days, beyond every stats period, today's counts and the overdue check, so stats do not change. Archived
+ * documents are read-only; the paged lists include them with {@code includeArchived=true}, and exports
+ * always do.
+ */
+@Service
+public class ArchiveService {
+
+    private static final Logger log = LoggerFactory.getLogger(ArchiveService.class);
+
+    private static final Duration MIN_HORIZON = Duration.ofDays(31);
+    private static final String LOCKS = "job_locks";
+    private static final String LOCK_ID = "archive";
+    // renewed after every user, so it only expires if the instance holding it is gone
+    private static final Duration LEASE = Duration.ofMinutes(10);
+
+    private final MongoTemplate mongoTemplate;
+    private final SessionHistory sessionHistory;
+    private final CollectionVersions versions;
+    private final Duration horizon;
+    private final int batchSize;
+    private final String instanceId = UUID.randomUUID().toString();
+    private final ScheduledExecutorService scheduler;
+    private final Counter archivedTasks;
+    private final Counter archivedSessions;
+    private volatile boolean stopped;
+
+    public ArchiveService(
+            MongoTemplate mongoTemplate,
+            SessionHistory sessionHistory,
+            CollectionVersions versions,
+            MeterRegistry meterRegistry,
+            @Value("${app.archive.enabled:false}") boolean enabled,
+            @Value("${app.archive.horizon:P180D}") Duration horizon,
+            @Value("${app.archive.interval:PT6H}") Duration interval,
+            @Value("${app.archive.batch-size:500}") int batchSize
+    ) {
+        if (horizon.compareTo(MIN_HORIZON) < 0) {
+            throw new IllegalArgumentException("app.archive.horizon must be at least " + MIN_HORIZON);
+        }
+        this.mongoTemplate = mongoTemplate;
+        this.sessionHistory = sessionHistory;
+        this.versions = versions;
+        this.horizon = horizon;
+        this.batchSize = batchSize;
+        this.archivedTasks = Counter.builder("klar.archive.documents")
+                .description("Documents moved to the archive")
+                .tag("collection", Task.ARCHIVE)
+                .register(meterRegistry);
+        this.archivedSessions = Counter.builder("klar.archive.documents")
+                .description("Documents moved to the archive")
+                .tag("collection", PomodoroSession.ARCHIVE)
+                .register(meterRegistry);
+        if (enabled) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(
+                    Thread.ofPlatform().name("archive").daemon().factory());
+            long initialDelay = Math.min(interval.toMillis(), Duration.ofMinutes(1).toMillis());
+            scheduler.scheduleWithFixedDelay(
+                    this::runScheduled, initialDelay, interval.toMillis(), TimeUnit.MILLISECONDS);
+        } else {
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Archives the completed tasks and sessions of all users that are older than the horizon, unless another
+     * instance is doing so.
+     */
+    public void archive() {
+        if (sessionHistory.isEnabled() && !sessionHistory.isReady()) {
+            // the history migration copies from both collections, so nothing may move between them meanwhile
+            log.debug("Archiving waits for the session history migration");
+            return;
+        }
+        if (!acquireLease()) {
+            log.debug("Archiving is running on another instance");
+            return;
+        }
+        try {
+            LocalDateTime cutoff = LocalDateTime.now().minus(horizon);
+            Query users = new Query();
+            users.fields().include("_id");
+            long tasks = 0;
+            long sessions = 0;
+            try (var stream = mongoTemplate.stream(users, Document.class, "users")) {
+                for (var it = stream.iterator(); it.hasNext() && !stopped; ) {
+                    String userId = it.next().get("_id").toString();
+                    tasks += archiveTasks(userId, cutoff);
+                    sessions += archiveSessions(userId, cutoff);
+                    if (!renewLease()) {
+                        log.warn("Lost the archive lease, stopping");
+                        break;
+                    }
+                }
+            }
+            log.info("Archived {} tasks and {} sessions completed before {}", tasks, sessions, cutoff);
+        } finally {
+            releaseLease();
+        }
+    }
+
+    private long archiveTasks(String userId, LocalDateTime cutoff) {
+        // a task completed before the cutoff was created before it, which bounds the index scan
+        Query old = new Query(where("userId").is(userId).and("completed").is(true)
+                .and("createdAt").lt(cutoff)
+                .and("completedAt").lt(cutoff));
+        long moved = inBatches(old, Task.class, batch -> {
+            List<Task> archived = move(batch, Task.class, Task.ARCHIVE, Task::getId, Task::getUpdatedAt);
+            archivedTasks.increment(archived.size());
+            return archived.size();
+        });
+        if (moved > 0) {
+            versions.bump(userId, CollectionVersions.TASKS);
+        }
+        return moved;
+    }
+
+    private long archiveSessions(String userId, LocalDateTime cutoff) {
+        Query old = new Query(where("userId").is(userId).and("completed").is(true)
+                .and("startTime").lt(cutoff));
+        long moved = inBatches(old, PomodoroSession.class, batch -> {
+            List<PomodoroSession> archived = move(batch, PomodoroSession.class, PomodoroSession.ARCHIVE,
+                    PomodoroSession::getId, PomodoroSession::getUpdatedAt);
+            archivedSessions.increment(archived.size());
+            return archived.size();
+        });
+        if (moved > 0) {
+            versions.bump(userId, CollectionVersions.SESSIONS);
+        }
+        return moved;
+    }
+
+    private <T> long inBatches(Query query, Class<T> type, Function<List<T>, Integer> action) {
+        List<T> batch = new ArrayList<>(batchSize);
+        long moved = 0;
+        try (var stream = mongoTemplate.stream(query, type)) {
+            for (var it = stream.iterator(); it.hasNext(); ) {
+                batch.add(it.next());
+                if (batch.size() == batchSize) {
+                    moved += action.apply(batch);
+                    batch.clear();
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            moved += action.apply(batch);
+        }
+        return moved;
+    }
+
+    /**
+     * Copies the batch to the archive and removes it from the active collection, returning the documents
+     * that were moved.
+     */
+    private <T> List<T> move(
+            List<T> batch,
+            Class<T> type,
+            String archive,
+            Function<T, String> idOf,
+            Function<T, LocalDateTime> updatedAtOf
+    ) {
+        BulkOperations copy = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, type, archive);
+        for (T document : batch) {
+            copy.replaceOne(new Query(where("_id").is(idOf.apply(document))), document,
+                    FindAndReplaceOptions.options().upsert());
+        }
+        copy.execute();
+
+        List<T> moved = new ArrayList<>(batch.size());
+        List<String> kept = new ArrayList<>();
+        for (T document : batch) {
+            // one at a time, so exactly the removed documents are counted as archived
+            Query unchanged = new Query(where("_id").is(idOf.apply(document))
+                    .and("updatedAt").is(updatedAtOf.apply(document)));
+            if (mongoTemplate.remove(unchanged, type).getDeletedCount() > 0) {
+                moved.add(document);
+            } else {
+                kept.add(idOf.apply(document));
+            }
+        }
+        if (!kept.isEmpty()) {
+            mongoTemplate.remove(new Query(where("_id").in(kept)), archive);
+        }
+        return moved;
+    }
+
+    private boolean acquireLease() {
+        Date now = new Date();
+        try {
+            // matches no document while the lease is held, so the upsert fails on the existing _id
+            mongoTemplate.upsert(
+                    new Query(where("_id").is(LOCK_ID).and("lockedUntil").lt(now)),
+                    new Update().set("owner", instanceId)
+                            .set("lockedUntil", new Date(now.getTime() + LEASE.toMillis())),
+                    LOCKS);
+            return true;
+        } catch (DuplicateKeyException e) {
+            return false;
+        }
+    }
+
+    private boolean renewLease() {
+        return mongoTemplate.updateFirst(
+                new Query(where("_id").is(LOCK_ID).and("owner").is(instanceId)),
+                new Update().set("lockedUntil", new Date(System.currentTimeMillis() + LEASE.toMillis())),
+                LOCKS).getMatchedCount() > 0;
+    }
+
+    private void releaseLease() {
+        mongoTemplate.updateFirst(
+                new Query(where("_id").is(LOCK_ID).and("owner").is(instanceId)),
+                new Update().set("lockedUntil", new Date()),
+                LOCKS);
+    }
+
+    private void runScheduled() {
+        try {
+            archive();
+        } catch (IllegalStateException e) {
+            // the client was closed because the application is shutting down
+            log.debug("Archiving stopped: {}", e.getMessage());
+        } catch (RuntimeException e) {
+            // thrown out of the scheduled task it would cancel all further runs
+            log.warn("Archiving failed, retrying with the next run", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        stopped = true;
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package ch.mitjakurath.klar.service;
+
+import java.security.SecureRandom;
+import org.bson.Document;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * Tracks a version per user and collection so that unchanged responses can be answered with
+ * {@code 304 Not Modified} without running their query. Mutating service methods call {@link #bump} after
+ * their write, which increments the user's counter in the {@code collection_versions} collection, so every
+ * instance serves the same ETag for the same data. Reading a version is a lookup by {@code _id}. The
+ * document also holds a random epoch set when it is created, so counters that start over because the
+ * document was removed never repeat an ETag a client may still hold.
+ */
+@Component
+public class CollectionVersions {
+
+    public static final String TASKS = "tasks";
+    public static final String SESSIONS = "sessions";
+    public static final String SETTINGS = "settings";
+
+    private static final String COLLECTION = "collection_versions";
+    private static final String EPOCH = "epoch";
+
+    private final MongoTemplate mongoTemplate;
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+    private final SecureRandom random = new SecureRandom();
+
+    public CollectionVersions(MongoTemplate mongoTemplate, ReactiveMongoTemplate reactiveMongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+    }
+
+    public void bump(String userId, String collection) {
+        mongoTemplate.upsert(
+                new Query(where("_id").is(userId)),
+                new Update().inc(collection, 1L)
+                        .setOnInsert(EPOCH, Long.toString(random.nextLong() & Long.MAX_VALUE, 36)),
+                COLLECTION);
+    }
+
+    /**
+     * Returns a weak ETag for the current version of the user's collection: the same version is served as
+     * JSON, CBOR or Smile, compressed or not, and Tomcat does not compress responses with a strong ETag.
+     * Responses that also depend on the clock pass the time bucket they were computed for as a qualifier.
+     */
+    public String etag(String userId, String collection, Object... qualifiers) {
+        Document versions = mongoTemplate.findOne(byUser(userId, collection), Document.class, COLLECTION);
+        return format(versions, collection, qualifiers);
+    }
+
+    /**
+     * Like {@link #etag}, read with the reactive driver.
+     */
+    public Mono<String> reactiveEtag(String userId, String collection, Object... qualifiers) {
+        return reactiveMongoTemplate.findOne(byUser(userId, collection), Document.class, COLLECTION)
+                .map(versions -> format(versions, collection, qualifiers))
+                .switchIfEmpty(Mono.fromSupplier(() -> format(null, collection, qualifiers)));
+    }
+
+    private static Query byUser(String userId, String collection) {
+        Query query = new Query(where("_id").is(userId));
+        query.fields().include(collection, EPOCH);
+        return query;
+    }
+
+    private static String format(Document versions, String collection, Object... qualifiers) {
+        // users without a document have not written anything since versions were tracked
+        String epoch = versions != null ? versions.get(EPOCH, "0") : "0";
+        Number version = versions != null ? versions.get(collection, Number.class) : null;
+        StringBuilder etag = new StringBuilder("W/\"")
+                .append(epoch).append('-')
+                .append(collection).append('-')
+                .append(Long.toString(version != null ? version.longValue() : 0, 36));
+        for (Object qualifier : qualifiers) {
+            etag.append('-').append(qualifier);
+        }
+        return etag.append('"').toString();
+    }
+}
@@ -0,0 +1,459 @@
+package ch.mitjakurath.klar.service;
+
+import ch.mitjakurath.klar.model.DailyUserStats;
+import ch.mitjakurath.klar.model.PomodoroSession;
+import ch.mitjakurath.klar.model.Task;
+import ch.mitjakurath.klar.model.Tombstone;
+import ch.mitjakurath.klar.repository.DailyUserStatsRepository;
+import ch.mitjakurath.klar.repository.PomodoroSessionRepositoryCustom.DayTotal;
+import ch.mitjakurath.klar.repository.PomodoroSessionRepositoryCustom.FocusTimeAggregate;
+import ch.mitjakurath.klar.repository.PomodoroSessionRepositoryCustom.TypeTotal;
+import ch.mitjakurath.klar.repository.TaskRepositoryCustom.PriorityTotal;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * Maintains the per-user, per-day rollups in {@code daily_user_stats}. Every
+ * mutation is recorded as the difference between the contribution of the
+ * document before and after the change, so incremental updates always agree
+ * with a rebuild from the raw collections.
+ * <p>
+ * Users whose increments could not be written are queued for a rebuild, which
+ * runs every {@code app.stats.rollups.repair-interval}; until then this instance
+ * reads their stats from the raw collections. A rebuild overwrites the rollups
+ * with a snapshot, which loses the increments of writes it raced with, so it is
+ * checked once every such write has landed and queued again if the user wrote
+ * anything since it started.
+ */
+@Service
+public class DailyStatsService {
+
+    private static final Logger log = LoggerFactory.getLogger(DailyStatsService.class);
+
+    private static final int BATCH_SIZE = 500;
+
+    private final MongoTemplate mongoTemplate;
+    private final DailyUserStatsRepository statsRepository;
+    private final boolean rollupsEnabled;
+    private final Duration clockMargin;
+    // users whose rollups need a rebuild, with the sequence number of the latest failure
+    private final Map<String, Long> repairs = new ConcurrentHashMap<>();
+    private final AtomicLong failures = new AtomicLong();
+    private final ScheduledExecutorService repairer;
+
+    public DailyStatsService(
+            MongoTemplate mongoTemplate,
+            DailyUserStatsRepository statsRepository,
+            MeterRegistry meterRegistry,
+            @Value("${app.stats.rollups.enabled:false}") boolean rollupsEnabled,
+            @Value("${app.stats.rollups.repair-interval:PT30S}") Duration repairInterval,
+            // how long a write may take from stamping updatedAt to its rollup increment, as for syncs
+            @Value("${app.sync.clock-margin:PT5S}") Duration clockMargin
+    ) {
+        this.mongoTemplate = mongoTemplate;
+        this.statsRepository = statsRepository;
+        this.rollupsEnabled = rollupsEnabled;
+        this.clockMargin = clockMargin;
+        this.repairer = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("stats-repair").daemon().factory());
+        repairer.scheduleWithFixedDelay(
+                this::runRepairs, repairInterval.toMillis(), repairInterval.toMillis(), TimeUnit.MILLISECONDS);
+        Gauge.builder("klar.stats.rollups.repairs", repairs, Map::size)
+                .description("Users whose rollups are waiting to be rebuilt")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return rollupsEnabled;
+    }
+
+    /**
+     * Whether the user's stats should be read from the rollups, which is not the case while they wait for
+     * a repair.
+     */
+    public boolean isEnabled(String userId) {
+        return rollupsEnabled && !repairs.containsKey(userId);
+    }
+
+    public Changes changes() {
+        return new Changes();
+    }
+
+    public FocusTimeAggregate getFocusTime(String userId, LocalDate firstDay, LocalDate lastDay) {
+        List<DailyUserStats> days = statsRepository.findByUserIdAndDayRange(
+                userId, firstDay.toString(), lastDay.toString());
+
+        Map<String, long[]> byType = new TreeMap<>();
+        List<DayTotal> byDay = new ArrayList<>();
+        for (DailyUserStats day : days) {
+            day.getCompletedSessionsByType().forEach((type, sessions) -> {
+                long minutes = day.getFocusMinutesByType().getOrDefault(type, 0L);
+                long[] total = byType.computeIfAbsent(type, t -> new long[2]);
+                total[0] += minutes;
+                total[1] += sessions;
+            });
+            long workSessions = day.getCompletedSessionsByType().getOrDefault("work", 0L);
+            if (workSessions > 0) {
+                byDay.add(new DayTotal(
+                        day.getDay(),
+                        day.getFocusMinutesByType().getOrDefault("work", 0L),
+                        workSessions
+                ));
+            }
+        }
+        byDay.sort((a, b) -> a.date().compareTo(b.date()));
+
+        List<TypeTotal> typeTotals = new ArrayList<>();
+        byType.forEach((type, total) -> {
+            if (total[1] > 0) {
+                typeTotals.add(new TypeTotal(type, total[0], total[1]));
+            }
+        });
+
+        return new FocusTimeAggregate(typeTotals, byDay);
+    }
+
+    public TaskTotals getTaskTotals(String userId, LocalDate today) {
+        String totalId = DailyUserStats.idOf(userId, DailyUserStats.TOTAL);
+        String todayId = DailyUserStats.idOf(userId, today.toString());
+
+        Map<String, DailyUserStats> docs = new HashMap<>();
+        statsRepository.findAllById(List.of(totalId, todayId))
+                .forEach(doc -> docs.put(doc.getId(), doc));
+
+        DailyUserStats total = Optional.ofNullable(docs.get(totalId)).orElseGet(DailyUserStats::new);
+        DailyUserStats day = Optional.ofNullable(docs.get(todayId)).orElseGet(DailyUserStats::new);
+
+        return new TaskTotals(total.getTotalTasks(), total.getCompletedTasks(), day.getTasksCompleted(), byPriority(total));
+    }
+
+    private List<PriorityTotal> byPriority(DailyUserStats stats) {
+        List<PriorityTotal> byPriority = new ArrayList<>();
+        stats.getTasksByPriority().forEach((priority, count) -> {
+            if (count > 0) {
+                byPriority.add(new PriorityTotal(
+                        priority,
+                        count,
+                        stats.getCompletedTasksByPriority().getOrDefault(priority, 0L)
+                ));
+            }
+        });
+        return byPriority;
+    }
+
+    public void rebuildAll() {
+        Query users = new Query();
+        users.fields().include("_id");
+        long rebuilt = 0;
+        Map<String, LocalDateTime> batch = new LinkedHashMap<>();
+        try (var stream = mongoTemplate.stream(users, Document.class, "users")) {
+            for (var it = stream.iterator(); it.hasNext(); ) {
+                String userId = it.next().get("_id").toString();
+                batch.put(userId, LocalDateTime.now());
+                rebuildUnchecked(userId);
+                rebuilt++;
+                if (batch.size() == BATCH_SIZE) {
+                    check(batch, null);
+                    batch.clear();
+                }
+            }
+        }
+        check(batch, null);
+        log.info("Rebuilt daily stats rollups for {} users, {} queued for another rebuild", rebuilt, repairs.size());
+    }
+
+    /**
+     * Rebuilds the user's rollups from the raw collections, or queues the user for another rebuild if they
+     * wrote anything meanwhile.
+     */
+    public void rebuild(String userId) {
+        LocalDateTime start = LocalDateTime.now();
+        rebuildUnchecked(userId);
+        check(Map.of(userId, start), null);
+    }
+
+    private void rebuildUnchecked(String userId) {
+        Changes changes = new Changes();
+        Query owned = new Query(where("userId").is(userId));
+
+        // archiving copies a document before removing it from the active collection, so one moved while
+        // both are read is seen in the active collection, the archive or both, and counted once
+        Set<String> seen = new HashSet<>();
+        try (var tasks = mongoTemplate.stream(owned, Task.class)) {
+            tasks.forEach(task -> {
+                seen.add(task.getId());
+                changes.addTask(task);
+            });
+        }
+        try (var tasks = mongoTemplate.stream(owned, Task.class, Task.ARCHIVE)) {
+            tasks.filter(task -> !seen.contains(task.getId())).forEach(changes::addTask);
+        }
+        seen.clear();
+        try (var sessions = mongoTemplate.stream(owned, PomodoroSession.class)) {
+            sessions.forEach(session -> {
+                seen.add(session.getId());
+                changes.addSession(session);
+            });
+        }
+        try (var sessions = mongoTemplate.stream(owned, PomodoroSession.class, PomodoroSession.ARCHIVE)) {
+            sessions.filter(session -> !seen.contains(session.getId())).forEach(changes::addSession);
+        }
+
+        changes.replace(userId);
+    }
+
+    /**
+     * Waits until the writes that were in flight when the rebuilds finished have written their increments,
+     * then queues the users that wrote anything since their rebuild started, and unqueues the others unless
+     * they failed again after {@code repaired}.
+     */
+    private void check(Map<String, LocalDateTime> rebuilt, Map<String, Long> repaired) {
+        if (rebuilt.isEmpty()) {
+            return;
+        }
+        try {
+            Thread.sleep(clockMargin);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            rebuilt.keySet().forEach(this::queueRepair);
+            return;
+        }
+        rebuilt.forEach((userId, start) -> {
+            if (writtenSince(userId, start.minus(clockMargin))) {
+                queueRepair(userId);
+            } else if (repaired != null) {
+                repairs.remove(userId, repaired.get(userId));
+            }
+        });
+    }
+
+    private boolean writtenSince(String userId, LocalDateTime since) {
+        // deletes write their tombstone before their rollup changes, so they are seen here as well
+        return mongoTemplate.exists(new Query(where("userId").is(userId).and("updatedAt").gte(since)), Task.class)
+                || mongoTemplate.exists(new Query(where("userId").is(userId).and("updatedAt").gte(since)), PomodoroSession.class)
+                || mongoTemplate.exists(new Query(where("userId").is(userId).and("deletedAt").gte(since)), Tombstone.class);
+    }
+
+    private void queueRepair(String userId) {
+        repairs.put(userId, failures.incrementAndGet());
+    }
+
+    private void runRepairs() {
+        if (repairs.isEmpty()) {
+            return;
+        }
+        Map<String, Long> queued = new HashMap<>(repairs);
+        Map<String, LocalDateTime> rebuilt = new LinkedHashMap<>();
+        try {
+            for (String userId : queued.keySet()) {
+                rebuilt.put(userId, LocalDateTime.now());
+                rebuildUnchecked(userId);
+            }
+            check(rebuilt, queued);
+            log.info("Repaired daily stats rollups of {} users, {} still queued", queued.size(), repairs.size());
+        } catch (IllegalStateException e) {
+            // the client was closed because the application is shutting down
+            log.debug("Rollup repair stopped: {}", e.getMessage());
+        } catch (RuntimeException e) {
+            // thrown out of the scheduled task it would cancel all further runs
+            log.warn("Could not repair daily stats rollups, retrying with the next run", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        repairer.shutdownNow();
+    }
+
+    public record TaskTotals(long totalTasks, long completedTasks, long todayCompleted, List<PriorityTotal> byPriority) {}
+
+    private record Key(String userId, String day) {}
+
+    /**
+     * Accumulates rollup increments; {@link #apply()} writes them in a single
+     * unordered bulk upsert. Increments are captured when a document is added or
+     * removed, so a document may be mutated after it has been removed.
+     */
+    public class Changes {
+
+        private final Map<Key, Map<String, Long>> increments = new LinkedHashMap<>();
+
+        public Changes addTask(Task task) {
+            return task(task, 1);
+        }
+
+        public Changes removeTask(Task task) {
+            return task(task, -1);
+        }
+
+        public Changes addSession(PomodoroSession session) {
+            return session(session, 1);
+        }
+
+        public Changes removeSession(PomodoroSession session) {
+            return session(session, -1);
+        }
+
+        public Changes include(Changes other) {
+            other.increments.forEach((key, fields) -> fields.forEach((field, delta) ->
+                    inc(key.userId(), key.day(), field, delta)));
+            return this;
+        }
+
+        public void apply() {
+            try {
+                write();
+            } catch (DataAccessException e) {
+                log.warn("Could not update daily stats rollups, queueing their users for a rebuild", e);
+                increments.keySet().forEach(key -> queueRepair(key.userId()));
+                increments.clear();
+            }
+        }
+
+        /**
+         * Replaces the rollups of the user with these totals, in place so that readers never see them empty.
+         */
+        private void replace(String userId) {
+            List<String> ids = new ArrayList<>(increments.size());
+            List<Map.Entry<Key, Map<String, Long>>> days = new ArrayList<>(increments.entrySet());
+            for (int from = 0; from < days.size(); from += BATCH_SIZE) {
+                BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, DailyUserStats.class);
+                for (Map.Entry<Key, Map<String, Long>> entry : days.subList(from, Math.min(from + BATCH_SIZE, days.size()))) {
+                    Key key = entry.getKey();
+                    String id = DailyUserStats.idOf(key.userId(), key.day());
+                    Document stats = new Document("_id", id)
+                            .append("userId", key.userId())
+                            .append("day", key.day());
+                    entry.getValue().forEach((field, total) -> put(stats, field, total));
+                    bulk.replaceOne(new Query(where("_id").is(id)), stats, FindAndReplaceOptions.options().upsert());
+                    ids.add(id);
+                }
+                bulk.execute();
+            }
+            mongoTemplate.remove(new Query(where("userId").is(userId).and("_id").nin(ids)), DailyUserStats.class);
+            increments.clear();
+        }
+
+        private static void put(Document document, String field, long value) {
+            int dot = field.indexOf('.');
+            if (dot < 0) {
+                document.put(field, value);
+                return;
+            }
+            Document nested = (Document) document.computeIfAbsent(field.substring(0, dot), name -> new Document());
+            nested.put(field.substring(dot + 1), value);
+        }
+
+        private void write() {
+            List<Map.Entry<Key, Map<String, Long>>> pending = increments.entrySet().stream()
+                    .filter(entry -> entry.getValue().values().stream().anyMatch(delta -> delta != 0))
+                    .toList();
+
+            for (int from = 0; from < pending.size(); from += BATCH_SIZE) {
+                BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, DailyUserStats.class);
+                for (Map.Entry<Key, Map<String, Long>> entry : pending.subList(from, Math.min(from + BATCH_SIZE, pending.size()))) {
+                    Key key = entry.getKey();
+                    Update update = new Update()
+                            .setOnInsert("userId", key.userId())
+                            .setOnInsert("day", key.day());
+                    entry.getValue().forEach((field, delta) -> {
+                        if (delta != 0) {
+                            update.inc(field, delta);
+                        }
+                    });
+                    bulk.upsert(new Query(where("_id").is(DailyUserStats.idOf(key.userId(), key.day()))), update);
+                }
+                bulk.execute();
+            }
+            increments.clear();
+        }
+
+        private Changes task(Task task, long sign) {
+            if (task == null || task.getUserId() == null) {
+                return this;
+            }
+            String userId = task.getUserId();
+            String priority = mapKey(task.getPriority());
+            boolean completed = task.isCompleted();
+
+            inc(userId, DailyUserStats.TOTAL, "totalTasks", sign);
+            inc(userId, DailyUserStats.TOTAL, "tasksByPriority." + priority, sign);
+            if (completed) {
+                inc(userId, DailyUserStats.TOTAL, "completedTasks", sign);
+                inc(userId, DailyUserStats.TOTAL, "completedTasksByPriority." + priority, sign);
+            }
+            if (task.getCreatedAt() != null) {
+                inc(userId, day(task.getCreatedAt()), "tasksCreated", sign);
+            }
+            if (completed && task.getCompletedAt() != null) {
+                inc(userId, day(task.getCompletedAt()), "tasksCompleted", sign);
+            }
+            return this;
+        }
+
+        private Changes session(PomodoroSession session, long sign) {
+            if (session == null || session.getUserId() == null || session.getStartTime() == null) {
+                return this;
+            }
+            String userId = session.getUserId();
+            String day = day(session.getStartTime());
+            String type = mapKey(session.getType());
+
+            inc(userId, day, "sessionsStarted", sign);
+            if (session.isCompleted()) {
+                inc(userId, day, "completedSessionsByType." + type, sign);
+                inc(userId, day, "focusMinutesByType." + type, sign * session.getDuration());
+            }
+            return this;
+        }
+
+        private void inc(String userId, String day, String field, long delta) {
+            increments
+                    .computeIfAbsent(new Key(userId, day), key -> new HashMap<>())
+                    .merge(field, delta, Long::sum);
+        }
+
+        private String day(LocalDateTime dateTime) {
+            return dateTime.toLocalDate().toString();
+        }
+
+        private String mapKey(String value) {
+            if (value == null || value.isEmpty()) {
+                return "none";
+            }
+            return value.replace('.', '_').replace('$', '_');
+        }
+    }
+}
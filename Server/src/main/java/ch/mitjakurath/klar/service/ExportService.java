@@ -0,0 +1,132 @@
+package ch.mitjakurath.klar.service;
+
+import ch.mitjakurath.klar.model.PomodoroSession;
+import ch.mitjakurath.klar.model.Task;
+import ch.mitjakurath.klar.repository.UserSettingsRepository;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * Streams all data of a user straight from Mongo cursors to the response, so
+ * memory use does not depend on the size of the history.
+ */
+@Service
+public class ExportService {
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private UserSettingsRepository settingsRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    /**
+     * Writes one {@code {"type": ..., "data": ...}} object per line.
+     */
+    public void exportNdjson(String userId, OutputStream out) throws IOException {
+        try (JsonGenerator generator = newGenerator(out)) {
+            settingsRepository.findByUserId(userId).ifPresent(settings ->
+                    writeLine(generator, new ExportLine("settings", settings)));
+
+            try (Stream<Task> tasks = tasks(userId)) {
+                tasks.forEach(task -> writeLine(generator, new ExportLine("task", task)));
+            }
+            try (Stream<PomodoroSession> sessions = sessions(userId)) {
+                sessions.forEach(session -> writeLine(generator, new ExportLine("session", session)));
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Writes a single gzip compressed JSON document with settings, tasks and sessions.
+     */
+    public void exportGzipJson(String userId, OutputStream out) throws IOException {
+        GZIPOutputStream gzip = new GZIPOutputStream(out, 8192);
+        try (JsonGenerator generator = newGenerator(gzip)) {
+            generator.writeStartObject();
+            generator.writeFieldName("exportedAt");
+            generator.writeObject(LocalDateTime.now());
+            generator.writeFieldName("settings");
+            generator.writeObject(settingsRepository.findByUserId(userId).orElse(null));
+
+            generator.writeArrayFieldStart("tasks");
+            try (Stream<Task> tasks = tasks(userId)) {
+                tasks.forEach(task -> writeValue(generator, task));
+            }
+            generator.writeEndArray();
+
+            generator.writeArrayFieldStart("sessions");
+            try (Stream<PomodoroSession> sessions = sessions(userId)) {
+                sessions.forEach(session -> writeValue(generator, session));
+            }
+            generator.writeEndArray();
+
+            generator.writeEndObject();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        gzip.finish();
+    }
+
+    private JsonGenerator newGenerator(OutputStream out) throws IOException {
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(out);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        generator.setRootValueSeparator(null);
+        return generator;
+    }
+
+    private void writeLine(JsonGenerator generator, ExportLine line) {
+        writeValue(generator, line);
+        try {
+            generator.writeRaw('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void writeValue(JsonGenerator generator, Object value) {
+        try {
+            generator.writeObject(value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * The user's tasks followed by the archived ones; closing the stream closes both cursors.
+     */
+    private Stream<Task> tasks(String userId) {
+        return Stream.concat(
+                mongoTemplate.stream(ownedBy(userId), Task.class),
+                mongoTemplate.stream(ownedBy(userId), Task.class, Task.ARCHIVE));
+    }
+
+    private Stream<PomodoroSession> sessions(String userId) {
+        return Stream.concat(
+                mongoTemplate.stream(ownedBy(userId), PomodoroSession.class),
+                mongoTemplate.stream(ownedBy(userId), PomodoroSession.class, PomodoroSession.ARCHIVE));
+    }
+
+    private static Query ownedBy(String userId) {
+        return new Query(where("userId").is(userId));
+    }
+
+    record ExportLine(String type, Object data) {}
+}
@@ -1,8 +1,16 @@
 package ch.mitjakurath.klar.service;
 
 import ch.mitjakurath.klar.repository.UserRepository;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.time.Duration;
 import java.util.Collections;
-import org.springframework.beans.factory.annotation.Autowired;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.User;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -10,15 +18,58 @@ import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 
+/**
+ * Caches user lookups. Users are loaded on virtual threads outside of the cache's internal locks, so a
+ * request running on a virtual thread is never pinned to its carrier while Mongo answers.
+ */
 @Service
 public class KlarUserDetailsService implements UserDetailsService {
 
-    @Autowired
-    private UserRepository userRepository;
+    private final UserRepository userRepository;
+    private final AsyncCache<String, UserDetails> users;
+
+    public KlarUserDetailsService(
+            UserRepository userRepository,
+            MeterRegistry meterRegistry,
+            @Value("${app.auth.user-cache.max-size:10000}") long maxSize,
+            @Value("${app.auth.user-cache.ttl:PT5M}") Duration ttl
+    ) {
+        this.userRepository = userRepository;
+        this.users = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .buildAsync();
+        CaffeineCacheMetrics.monitor(meterRegistry, users.synchronous(), "auth.users");
+    }
 
     @Override
     public UserDetails loadUserByUsername(String userId)
             throws UsernameNotFoundException {
+        try {
+            return loadUserAsync(userId).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Like {@link #loadUserByUsername} but without blocking; the future fails with
+     * {@link UsernameNotFoundException} if there is no such user.
+     */
+    public CompletableFuture<UserDetails> loadUserAsync(String userId) {
+        return users.get(userId, this::loadUser);
+    }
+
+    public void evictUser(String userId) {
+        users.synchronous().invalidate(userId);
+    }
+
+    private UserDetails loadUser(String userId) {
         ch.mitjakurath.klar.model.User user = userRepository
                 .findById(userId)
                 .orElseThrow(() ->
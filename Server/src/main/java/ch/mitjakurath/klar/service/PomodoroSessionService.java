@@ -1,16 +1,24 @@
 package ch.mitjakurath.klar.service;
 
+import ch.mitjakurath.klar.dto.CursorPage;
 import ch.mitjakurath.klar.model.PomodoroSession;
+import ch.mitjakurath.klar.repository.PageCursor;
 import ch.mitjakurath.klar.repository.PomodoroSessionRepository;
+import ch.mitjakurath.klar.repository.PomodoroSessionRepositoryCustom.FocusTimeAggregate;
+import ch.mitjakurath.klar.repository.PomodoroSessionRepositoryCustom.TypeTotal;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 @Service
 public class PomodoroSessionService {
@@ -18,44 +26,123 @@ public class PomodoroSessionService {
     @Autowired
     private PomodoroSessionRepository sessionRepository;
 
+    @Autowired
+    private DailyStatsService dailyStatsService;
+
+    @Autowired
+    private UserEventBus eventBus;
+
+    @Autowired
+    private CollectionVersions versions;
+
+    @Autowired
+    private SessionWriteBehind writeBehind;
+
+    @Autowired
+    private RequestCoalescer coalescer;
+
+    @Autowired
+    private SessionHistory sessionHistory;
+
     public PomodoroSession startSession(String userId, int duration, String type, String taskId) {
         PomodoroSession session = new PomodoroSession(userId, duration, type);
         session.setTaskId(taskId);
-        return sessionRepository.save(session);
+        PomodoroSession startedSession = sessionRepository.save(session);
+        dailyStatsService.changes().addSession(startedSession).apply();
+        versions.bump(userId, CollectionVersions.SESSIONS);
+        eventBus.publish(userId, "session.started", startedSession);
+        return startedSession;
     }
 
     public Optional<PomodoroSession> getSessionById(String sessionId) {
-        return sessionRepository.findById(sessionId);
+        return writeBehind.pending(sessionId).or(() -> sessionRepository.findById(sessionId));
+    }
+
+    /**
+     * Returns the id of the user owning the session, usually without reading it.
+     */
+    public Optional<String> getSessionOwner(String sessionId) {
+        return writeBehind.owner(sessionId);
     }
 
+    /**
+     * Updates the session; unless it is completed, the update is stored with the next write-behind flush.
+     */
     public PomodoroSession updateSession(PomodoroSession session) {
-        return sessionRepository.save(session);
+        // as stored, so the write-behind can tell whether its version was written
+        session.setUpdatedAt(LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS));
+        writeBehind.write(session);
+        return session;
     }
 
-    public PomodoroSession completeSession(String sessionId) {
-        Optional<PomodoroSession> sessionOpt = sessionRepository.findById(sessionId);
-        if (sessionOpt.isPresent()) {
-            PomodoroSession session = sessionOpt.get();
-            session.setCompleted(true);
-            return sessionRepository.save(session);
+    public Optional<PomodoroSession> completeSession(String sessionId, String userId) {
+        LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+        PomodoroSession session = writeBehind.afterPending(
+                sessionId, () -> sessionRepository.complete(sessionId, userId, now));
+        if (session == null) {
+            return Optional.empty();
         }
-        throw new RuntimeException("Session not found");
+
+        DailyStatsService.Changes changes = dailyStatsService.changes().removeSession(session);
+        SessionHistory.Changes history = sessionHistory.changes().removeSession(session);
+        if (session.getEndTime() == null) {
+            session.setEndTime(now);
+        }
+        session.setCompleted(true);
+        session.setUpdatedAt(now);
+        changes.addSession(session).apply();
+        history.addSession(session).apply();
+        versions.bump(userId, CollectionVersions.SESSIONS);
+        eventBus.publish(userId, "session.updated", session);
+        return Optional.of(session);
     }
 
     public List<PomodoroSession> getUserSessions(String userId) {
         return sessionRepository.findByUserIdOrderByCreatedAtDesc(userId);
     }
 
+    /**
+     * With {@code includeArchived}, the page also holds the user's archived sessions, in the same order.
+     */
+    public CursorPage<PomodoroSession> getSessionsPage(
+            String userId, PageCursor after, int limit, Set<String> fields, boolean includeArchived) {
+        List<PomodoroSession> sessions = sessionRepository.findPage(userId, after, limit + 1, fields);
+        if (includeArchived) {
+            sessions = PageCursor.merge(sessions, sessionRepository.findArchivedPage(userId, after, limit + 1, fields),
+                    limit + 1, session -> new PageCursor(session.getCreatedAt(), session.getId()));
+        }
+        return CursorPage.of(sessions, limit, last -> new PageCursor(last.getCreatedAt(), last.getId()).encode());
+    }
+
+    /**
+     * Returns today's sessions, newest first. With the session history, completed ones are read from there
+     * and only those in progress from the sessions collection.
+     */
     public List<PomodoroSession> getTodaySessions(String userId) {
         LocalDateTime startOfDay = LocalDate.now().atStartOfDay();
         LocalDateTime endOfDay = startOfDay.plusDays(1);
 
-        return sessionRepository.findByUserIdAndStartTimeBetweenOrderByStartTimeDesc(
-                userId, startOfDay, endOfDay);
+        if (!sessionHistory.isReady()) {
+            return sessionRepository.findByUserIdAndStartTimeBetweenOrderByStartTimeDesc(
+                    userId, startOfDay, endOfDay);
+        }
+        List<PomodoroSession> sessions = new ArrayList<>(sessionRepository
+                .findByUserIdAndCompletedAndStartTimeBetweenOrderByStartTimeDesc(userId, false, startOfDay, endOfDay));
+        sessions.addAll(sessionHistory.findCompleted(userId, startOfDay, endOfDay));
+        sessions.sort(Comparator.comparing(PomodoroSession::getStartTime).reversed());
+        return sessions;
     }
 
+    /**
+     * Returns the focus time stats, sharing the computation with concurrent requests of the same user and period.
+     */
     public Map<String, Object> getFocusTimeStats(String userId, String period) {
-        Map<String, Object> stats = new HashMap<>();
+        String version = versions.etag(userId, CollectionVersions.SESSIONS, LocalDate.now());
+        return coalescer.coalesce("focus.time", userId + ' ' + period + ' ' + version,
+                () -> computeFocusTimeStats(userId, period));
+    }
+
+    private Map<String, Object> computeFocusTimeStats(String userId, String period) {
         LocalDateTime start, end;
 
         switch (period) {
@@ -76,22 +163,52 @@ public class PomodoroSessionService {
                 end = start.plusDays(1);
         }
 
-        List<PomodoroSession> sessions = sessionRepository
-                .findByUserIdAndStartTimeBetweenOrderByStartTimeDesc(userId, start, end);
+        FocusTimeAggregate aggregate;
+        if (dailyStatsService.isEnabled(userId)) {
+            aggregate = dailyStatsService.getFocusTime(userId, start.toLocalDate(), end.minusDays(1).toLocalDate());
+        } else if (sessionHistory.isReady()) {
+            aggregate = sessionHistory.aggregateFocusTime(userId, start, end);
+        } else {
+            aggregate = sessionRepository.aggregateFocusTime(userId, start, end);
+        }
 
-        int totalMinutes = sessions.stream()
-                .filter(PomodoroSession::isCompleted)
-                .filter(s -> "work".equals(s.getType()))
-                .mapToInt(PomodoroSession::getDuration)
-                .sum();
+        return focusTimeStats(period, aggregate);
+    }
+
+    /**
+     * Shapes the per-type and per-day totals into the focus-time response.
+     */
+    static Map<String, Object> focusTimeStats(String period, FocusTimeAggregate aggregate) {
+        Map<String, Object> stats = new HashMap<>();
+        Map<String, Object> byType = new HashMap<>();
+        int totalMinutes = 0;
+        long completedSessions = 0;
+        for (TypeTotal total : aggregate.byType()) {
+            if (total.type() == null) {
+                continue;
+            }
+            byType.put(total.type(), Map.of(
+                    "minutes", total.minutes(),
+                    "sessions", total.sessions()
+            ));
+            if ("work".equals(total.type())) {
+                totalMinutes = (int) total.minutes();
+                completedSessions = total.sessions();
+            }
+        }
 
-        long completedSessions = sessions.stream()
-                .filter(PomodoroSession::isCompleted)
-                .filter(s -> "work".equals(s.getType()))
-                .count();
+        List<Map<String, Object>> byDay = aggregate.byDay().stream()
+                .map(day -> Map.<String, Object>of(
+                        "date", day.date(),
+                        "minutes", day.minutes(),
+                        "sessions", day.sessions()
+                ))
+                .toList();
 
         stats.put("totalMinutes", totalMinutes);
         stats.put("completedSessions", completedSessions);
+        stats.put("byDay", byDay);
+        stats.put("byType", byType);
         stats.put("period", period);
 
         return stats;
@@ -0,0 +1,67 @@
+package ch.mitjakurath.klar.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import org.springframework.stereotype.Component;
+
+/**
+ * Lets concurrent identical reads share one computation (single-flight): the first caller for a key computes
+ * the result, callers arriving while it runs wait for and return the same result, and the next call after
+ * it completes computes again. Nothing is cached beyond that. Keys should include the collection version the
+ * result is based on, so a read that starts after a write never joins a computation that started before it.
+ * Calls are counted in {@code klar.requests.coalesced}, tagged with whether they computed or shared a result.
+ */
+@Component
+public class RequestCoalescer {
+
+    private final MeterRegistry meterRegistry;
+    private final Map<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    public RequestCoalescer(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T coalesce(String name, String key, Supplier<T> computation) {
+        String flightKey = name + ' ' + key;
+        CompletableFuture<Object> flight = new CompletableFuture<>();
+        CompletableFuture<Object> running = inFlight.putIfAbsent(flightKey, flight);
+        if (running != null) {
+            count(name, "shared");
+            try {
+                return (T) running.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                throw e;
+            }
+        }
+
+        count(name, "computed");
+        try {
+            T result = computation.get();
+            flight.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(flightKey, flight);
+        }
+    }
+
+    private void count(String name, String outcome) {
+        Counter.builder("klar.requests.coalesced")
+                .description("Reads that computed a result or shared the result of an identical read in flight")
+                .tag("name", name)
+                .tag("outcome", outcome)
+                .register(meterRegistry)
+                .increment();
+    }
+}
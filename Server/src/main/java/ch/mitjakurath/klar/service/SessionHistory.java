@@ -0,0 +1,242 @@
+package ch.mitjakurath.klar.service;
+
+import ch.mitjakurath.klar.model.CompletedSession;
+import ch.mitjakurath.klar.model.PomodoroSession;
+import ch.mitjakurath.klar.repository.CompletedSessionRepository;
+import ch.mitjakurath.klar.repository.PomodoroSessionRepositoryCustom.FocusTimeAggregate;
+import jakarta.annotation.PostConstruct;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * Keeps a copy of every completed session in the time-series collection {@code pomodoro_session_history}
+ * when {@code app.sessions.history.enabled} is set. Like the daily stats rollups, each change is recorded
+ * as the difference between the session before and after it, so an edited completed session replaces its
+ * entry; deleting entries by session id needs MongoDB 7.0 or newer.
+ * <p>
+ * The collection is created at startup, before any request is served, so that live writes never create it
+ * as an ordinary collection. Every instance records when it started writing the history in the
+ * {@code migrations} collection, and the earliest of these is the cutoff for {@link #migrate()}, which only one
+ * instance runs and which copies the sessions last stored before it; reads switch to the history once it has
+ * finished.
+ */
+@Service
+public class SessionHistory {
+
+    private static final Logger log = LoggerFactory.getLogger(SessionHistory.class);
+
+    private static final String MIGRATIONS = "migrations";
+    private static final String MIGRATION_ID = "session-history";
+    private static final int BATCH_SIZE = 500;
+    private static final long READY_CHECK_INTERVAL_MILLIS = 10_000;
+
+    private final MongoTemplate mongoTemplate;
+    private final CompletedSessionRepository historyRepository;
+    private final boolean enabled;
+
+    private volatile boolean ready;
+    private volatile long readyCheckedAt;
+
+    public SessionHistory(
+            MongoTemplate mongoTemplate,
+            CompletedSessionRepository historyRepository,
+            @Value("${app.sessions.history.enabled:false}") boolean enabled
+    ) {
+        this.mongoTemplate = mongoTemplate;
+        this.historyRepository = historyRepository;
+        this.enabled = enabled;
+    }
+
+    @PostConstruct
+    void createCollection() {
+        if (!enabled) {
+            return;
+        }
+        if (!mongoTemplate.collectionExists(CompletedSession.class)) {
+            try {
+                mongoTemplate.createCollection(CompletedSession.class);
+            } catch (DataAccessException e) {
+                // another instance created it first
+                if (!mongoTemplate.collectionExists(CompletedSession.class)) {
+                    throw e;
+                }
+            }
+        }
+        // the earliest instance to write the history sets the cutoff for all of them
+        mongoTemplate.upsert(new Query(where("_id").is(MIGRATION_ID)),
+                new Update().min("liveSince", new Date()), MIGRATIONS);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Whether the history holds all completed sessions and can be read instead of the sessions collection.
+     */
+    public boolean isReady() {
+        if (!enabled || ready) {
+            return ready;
+        }
+        long now = System.currentTimeMillis();
+        if (now - readyCheckedAt >= READY_CHECK_INTERVAL_MILLIS) {
+            readyCheckedAt = now;
+            Document migration = mongoTemplate.findById(MIGRATION_ID, Document.class, MIGRATIONS);
+            ready = migration != null && migration.get("finishedAt") != null;
+        }
+        return ready;
+    }
+
+    /**
+     * Copies the completed sessions stored before the first instance started writing the history, including
+     * the archived ones, unless another instance has already started doing so. Sessions changed while their
+     * batch was copied have their entries replaced by their current state. An interrupted migration is not
+     * resumed: drop {@code pomodoro_session_history} and the {@code session-history} migration document, then
+     * restart all instances to run it again.
+     */
+    public void migrate() {
+        if (!enabled) {
+            return;
+        }
+        Document migration = mongoTemplate.findAndModify(
+                new Query(where("_id").is(MIGRATION_ID).and("startedAt").exists(false)),
+                Update.update("startedAt", new Date()),
+                Document.class, MIGRATIONS);
+        if (migration == null) {
+            if (!isReady()) {
+                log.info("Session history is being migrated by another instance, or its migration was interrupted");
+            }
+            return;
+        }
+        LocalDateTime liveSince = LocalDateTime.ofInstant(
+                migration.getDate("liveSince").toInstant(), ZoneId.systemDefault());
+
+        Query before = new Query(where("completed").is(true).orOperator(
+                where("updatedAt").lt(liveSince),
+                where("updatedAt").exists(false)));
+        List<CompletedSession> batch = new ArrayList<>(BATCH_SIZE);
+        long copied = 0;
+        // archiving waits for this migration, so no session moves between the two collections meanwhile
+        for (String collection : List.of(mongoTemplate.getCollectionName(PomodoroSession.class), PomodoroSession.ARCHIVE)) {
+            try (var sessions = mongoTemplate.stream(before, PomodoroSession.class, collection)) {
+                for (var it = sessions.iterator(); it.hasNext(); ) {
+                    batch.add(CompletedSession.of(it.next()));
+                    if (batch.size() == BATCH_SIZE) {
+                        copied += copy(batch, collection, liveSince);
+                    }
+                }
+            }
+            if (!batch.isEmpty()) {
+                copied += copy(batch, collection, liveSince);
+            }
+        }
+
+        mongoTemplate.updateFirst(new Query(where("_id").is(MIGRATION_ID)),
+                Update.update("finishedAt", new Date()).set("sessions", copied), MIGRATIONS);
+        ready = true;
+        log.info("Copied {} completed sessions into the session history", copied);
+    }
+
+    /**
+     * Inserts a batch of entries, then replaces those whose session was changed after it was read: a live
+     * write that removed the old entry before the copy was inserted would otherwise leave both.
+     */
+    private int copy(List<CompletedSession> batch, String collection, LocalDateTime liveSince) {
+        mongoTemplate.insert(batch, CompletedSession.class);
+        int copied = batch.size();
+        List<String> ids = batch.stream().map(CompletedSession::getSessionId).toList();
+        batch.clear();
+
+        Query changed = new Query(where("_id").in(ids).and("updatedAt").gte(liveSince));
+        for (PomodoroSession session : mongoTemplate.find(changed, PomodoroSession.class, collection)) {
+            mongoTemplate.remove(
+                    new Query(where("userId").is(session.getUserId()).and("sessionId").is(session.getId())),
+                    CompletedSession.class);
+            if (session.isCompleted()) {
+                mongoTemplate.insert(CompletedSession.of(session));
+            }
+        }
+        return copied;
+    }
+
+    public Changes changes() {
+        return new Changes();
+    }
+
+    public List<PomodoroSession> findCompleted(String userId, LocalDateTime start, LocalDateTime end) {
+        return historyRepository.findByUserIdAndStartTimeBetweenOrderByStartTimeDesc(userId, start, end).stream()
+                .map(CompletedSession::toSession)
+                .toList();
+    }
+
+    public FocusTimeAggregate aggregateFocusTime(String userId, LocalDateTime start, LocalDateTime end) {
+        return historyRepository.aggregateFocusTime(userId, start, end);
+    }
+
+    /**
+     * Collects the completed sessions whose entries to remove and insert; {@link #apply()} writes them in one
+     * ordered bulk write. Entries are captured when a session is added or removed, so a session may be mutated
+     * after it has been removed. An entry that is removed and added again unchanged is left alone.
+     */
+    public class Changes {
+
+        private final Map<String, CompletedSession> removed = new LinkedHashMap<>();
+        private final Map<String, CompletedSession> added = new LinkedHashMap<>();
+
+        public Changes addSession(PomodoroSession session) {
+            if (enabled && session != null && session.isCompleted()) {
+                added.put(session.getId(), CompletedSession.of(session));
+            }
+            return this;
+        }
+
+        public Changes removeSession(PomodoroSession session) {
+            if (enabled && session != null && session.isCompleted()) {
+                removed.put(session.getId(), CompletedSession.of(session));
+            }
+            return this;
+        }
+
+        public void apply() {
+            for (var it = removed.values().iterator(); it.hasNext(); ) {
+                CompletedSession entry = it.next();
+                CompletedSession replacement = added.get(entry.getSessionId());
+                if (replacement != null && replacement.sameAs(entry)) {
+                    it.remove();
+                    added.remove(entry.getSessionId());
+                }
+            }
+            if (removed.isEmpty() && added.isEmpty()) {
+                return;
+            }
+
+            try {
+                BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.ORDERED, CompletedSession.class);
+                removed.values().forEach(entry -> bulk.remove(new Query(
+                        where("userId").is(entry.getUserId()).and("sessionId").is(entry.getSessionId()))));
+                bulk.insert(new ArrayList<>(added.values()));
+                bulk.execute();
+            } catch (DataAccessException e) {
+                log.warn("Could not update the session history of {} sessions", removed.size() + added.size(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package ch.mitjakurath.klar.service;
+
+import ch.mitjakurath.klar.model.PomodoroSession;
+import ch.mitjakurath.klar.repository.PomodoroSessionRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Buffers session updates and stores them in batches. The timer client updates a running session every
+ * few seconds, so repeated updates of a session are coalesced and only the latest version is written, with
+ * all pending sessions replaced in one bulk write every {@code app.sessions.write-behind.flush-interval}.
+ * Completed sessions are written through, as is every update while {@code max-pending} sessions are waiting.
+ * <p>
+ * Versions are bumped and events published once a session is stored, so a client refetching after either
+ * sees the update; list reads may lag a buffered update by up to one interval. Another instance may have
+ * completed, deleted or archived the session meanwhile: an update is only stored over the version it
+ * replaces, never reopens a completed session and never inserts one, and updates that are dropped this
+ * way change no stats. Pending updates are flushed
+ * on shutdown, a crash loses at most one interval of timer updates. The owners of recently updated sessions
+ * are remembered, so the ownership check of an update rarely needs to read the session.
+ */
+@Component
+public class SessionWriteBehind {
+
+    private static final Logger log = LoggerFactory.getLogger(SessionWriteBehind.class);
+
+    private final PomodoroSessionRepository sessionRepository;
+    private final DailyStatsService dailyStatsService;
+    private final SessionHistory sessionHistory;
+    private final CollectionVersions versions;
+    private final UserEventBus eventBus;
+    private final Map<String, PomodoroSession> pending = new ConcurrentHashMap<>();
+    private final Cache<String, String> owners;
+    // one writer at a time, so an older version of a session is never stored after a newer one
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final ScheduledExecutorService flusher;
+    private final int maxPending;
+    private final Timer flushTimer;
+    private final Counter coalesced;
+    private volatile boolean stopped;
+
+    public SessionWriteBehind(
+            PomodoroSessionRepository sessionRepository,
+            DailyStatsService dailyStatsService,
+            SessionHistory sessionHistory,
+            CollectionVersions versions,
+            UserEventBus eventBus,
+            MeterRegistry meterRegistry,
+            @Value("${app.sessions.write-behind.enabled:true}") boolean enabled,
+            @Value("${app.sessions.write-behind.flush-interval:PT0.25S}") Duration flushInterval,
+            @Value("${app.sessions.write-behind.max-pending:10000}") int maxPending,
+            @Value("${app.sessions.owner-cache.max-size:10000}") long maxOwners
+    ) {
+        this.sessionRepository = sessionRepository;
+        this.dailyStatsService = dailyStatsService;
+        this.sessionHistory = sessionHistory;
+        this.versions = versions;
+        this.eventBus = eventBus;
+        this.maxPending = maxPending;
+        this.owners = Caffeine.newBuilder()
+                .maximumSize(maxOwners)
+                .expireAfterAccess(Duration.ofHours(1))
+                .build();
+        if (enabled) {
+            flusher = Executors.newSingleThreadScheduledExecutor(
+                    Thread.ofPlatform().name("session-write-behind").daemon().factory());
+            flusher.scheduleWithFixedDelay(
+                    this::flush, flushInterval.toMillis(), flushInterval.toMillis(), TimeUnit.MILLISECONDS);
+        } else {
+            flusher = null;
+        }
+        this.flushTimer = Timer.builder("klar.sessions.write-behind.flush")
+                .description("Time to store a batch of buffered session updates")
+                .register(meterRegistry);
+        this.coalesced = Counter.builder("klar.sessions.write-behind.coalesced")
+                .description("Session updates replaced by a later update before being stored")
+                .register(meterRegistry);
+        Gauge.builder("klar.sessions.write-behind.pending", pending, Map::size)
+                .description("Session updates waiting to be stored")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Queues the session to be stored with the next flush, or stores it right away.
+     */
+    public void write(PomodoroSession session) {
+        owners.put(session.getId(), session.getUserId());
+        if (flusher == null || stopped || session.isCompleted() || pending.size() >= maxPending) {
+            writeThrough(session);
+            return;
+        }
+        if (pending.put(session.getId(), session) != null) {
+            coalesced.increment();
+        }
+    }
+
+    /**
+     * Stores the pending update of the session, then runs {@code action} before any other update is stored.
+     */
+    public <T> T afterPending(String sessionId, Supplier<T> action) {
+        writeLock.lock();
+        try {
+            PomodoroSession session = pending.remove(sessionId);
+            if (session != null) {
+                store(List.of(session));
+            }
+            return action.get();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the session as it will be stored by the next flush, if an update is pending.
+     */
+    public Optional<PomodoroSession> pending(String sessionId) {
+        return Optional.ofNullable(pending.get(sessionId));
+    }
+
+    /**
+     * Returns the id of the user owning the session, or empty if there is no such session.
+     */
+    public Optional<String> owner(String sessionId) {
+        PomodoroSession session = pending.get(sessionId);
+        if (session != null) {
+            return Optional.of(session.getUserId());
+        }
+        String owner = owners.getIfPresent(sessionId);
+        if (owner != null) {
+            return Optional.of(owner);
+        }
+        Optional<String> stored = sessionRepository.findById(sessionId).map(PomodoroSession::getUserId);
+        stored.ifPresent(userId -> owners.put(sessionId, userId));
+        return stored;
+    }
+
+    /**
+     * Stores all pending updates.
+     */
+    public void flush() {
+        writeLock.lock();
+        try {
+            List<PomodoroSession> batch = new ArrayList<>();
+            for (Map.Entry<String, PomodoroSession> entry : pending.entrySet()) {
+                // a session updated meanwhile stays pending with its newer version
+                if (pending.remove(entry.getKey(), entry.getValue())) {
+                    batch.add(entry.getValue());
+                }
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+            try {
+                flushTimer.record(() -> store(batch));
+            } catch (RuntimeException e) {
+                // thrown out of the scheduled task it would cancel all further flushes
+                log.warn("Could not store {} session updates, retrying with the next flush", batch.size(), e);
+                batch.forEach(session -> pending.putIfAbsent(session.getId(), session));
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void writeThrough(PomodoroSession session) {
+        writeLock.lock();
+        try {
+            pending.remove(session.getId());
+            store(List.of(session));
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void store(List<PomodoroSession> sessions) {
+        Map<String, PomodoroSession> previous = new HashMap<>();
+        for (PomodoroSession session : sessionRepository.replaceAll(sessions)) {
+            previous.put(session.getId(), session);
+        }
+        // the others were deleted, archived, completed or updated elsewhere meanwhile, so nothing changed
+        List<PomodoroSession> stored = sessions.stream()
+                .filter(session -> previous.containsKey(session.getId()))
+                .toList();
+        if (stored.size() < sessions.size()) {
+            log.debug("Dropped {} session updates superseded by other writes", sessions.size() - stored.size());
+        }
+
+        DailyStatsService.Changes changes = dailyStatsService.changes();
+        SessionHistory.Changes history = sessionHistory.changes();
+        for (PomodoroSession session : stored) {
+            changes.removeSession(previous.get(session.getId())).addSession(session);
+            history.removeSession(previous.get(session.getId())).addSession(session);
+        }
+        changes.apply();
+        history.apply();
+
+        Set<String> userIds = new LinkedHashSet<>();
+        for (PomodoroSession session : stored) {
+            userIds.add(session.getUserId());
+        }
+        userIds.forEach(userId -> versions.bump(userId, CollectionVersions.SESSIONS));
+        stored.forEach(session -> eventBus.publish(session.getUserId(), "session.updated", session));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        stopped = true;
+        if (flusher != null) {
+            flusher.shutdown();
+        }
+        flush();
+    }
+}
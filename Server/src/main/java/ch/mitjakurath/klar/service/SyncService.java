@@ -0,0 +1,124 @@
+package ch.mitjakurath.klar.service;
+
+import ch.mitjakurath.klar.dto.SyncResponse;
+import ch.mitjakurath.klar.model.PomodoroSession;
+import ch.mitjakurath.klar.model.Task;
+import ch.mitjakurath.klar.model.Tombstone;
+import ch.mitjakurath.klar.model.UserSettings;
+import ch.mitjakurath.klar.repository.ChangeCursor;
+import ch.mitjakurath.klar.repository.PomodoroSessionRepository;
+import ch.mitjakurath.klar.repository.TaskRepository;
+import ch.mitjakurath.klar.repository.TombstoneRepository;
+import ch.mitjakurath.klar.repository.UserSettingsRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Serves delta syncs. A sync token is a {@link ChangeCursor}: the point in time from which changes are
+ * returned and, when a response was cut off, the id of the last change it held at that time, so documents
+ * sharing one modification time are paged through like any others. Every read is a range scan on
+ * {@code {userId, updatedAt, _id}} (or {@code deletedAt} for tombstones), so the work done scales with the
+ * number of changes. Tokens trail the server clock by {@code app.sync.clock-margin} so that writes still in
+ * flight when the token was issued are picked up by the next sync. Clients may therefore receive a document
+ * they already have again, which they should treat as an upsert.
+ */
+@Service
+public class SyncService {
+
+    private static final LocalDateTime EPOCH = LocalDateTime.of(1970, 1, 1, 0, 0);
+
+    @Autowired
+    private TaskRepository taskRepository;
+
+    @Autowired
+    private PomodoroSessionRepository sessionRepository;
+
+    @Autowired
+    private UserSettingsRepository settingsRepository;
+
+    @Autowired
+    private TombstoneRepository tombstoneRepository;
+
+    @Autowired
+    private CollectionVersions versions;
+
+    @Value("${app.sync.max-changes:1000}")
+    private int maxChanges;
+
+    @Value("${app.sync.clock-margin:PT5S}")
+    private Duration clockMargin;
+
+    /**
+     * Returns the changes since {@code token}, or everything if it is {@code null}.
+     *
+     * @throws IllegalArgumentException if the token is malformed
+     */
+    public SyncResponse sync(String userId, String token) {
+        LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+        ChangeCursor requested = token != null ? decode(token) : null;
+        boolean reset = requested != null && requested.time().isBefore(now.minus(Tombstone.RETENTION));
+        ChangeCursor since = reset ? null : requested;
+        if (since == null && sessionRepository.backfillUpdatedAt(userId) > 0) {
+            versions.bump(userId, CollectionVersions.SESSIONS);
+        }
+        ChangeCursor from = since != null ? since : ChangeCursor.from(EPOCH);
+        int limit = maxChanges + 1;
+
+        List<Task> tasks = taskRepository.findChanges(userId, from, limit);
+        List<PomodoroSession> sessions = sessionRepository.findChanges(userId, from, limit);
+        List<Tombstone> tombstones = since != null
+                ? tombstoneRepository.findChanges(userId, since, limit)
+                : List.of();
+
+        // if a collection has more changes than fit in one response, the next sync continues after the
+        // earliest change where one was cut off; the other collections repeat what they returned beyond it.
+        // A cut within the clock margin resumes from the margin, and moves past it once the clock has.
+        ChangeCursor next = ChangeCursor.from(now.minus(clockMargin));
+        next = earliest(next, tasks, task -> new ChangeCursor(task.getUpdatedAt(), task.getId()));
+        next = earliest(next, sessions, session -> new ChangeCursor(session.getUpdatedAt(), session.getId()));
+        next = earliest(next, tombstones, tombstone -> new ChangeCursor(tombstone.getDeletedAt(), tombstone.getId()));
+        boolean hasMore = tasks.size() > maxChanges || sessions.size() > maxChanges || tombstones.size() > maxChanges;
+
+        UserSettings settings = settingsRepository.findByUserId(userId)
+                .filter(s -> since == null || s.getUpdatedAt() == null || !s.getUpdatedAt().isBefore(since.time()))
+                .orElse(null);
+
+        return new SyncResponse(
+                tasks.subList(0, Math.min(tasks.size(), maxChanges)),
+                sessions.subList(0, Math.min(sessions.size(), maxChanges)),
+                settings,
+                tombstones.stream()
+                        .limit(maxChanges)
+                        .filter(tombstone -> Tombstone.TASKS.equals(tombstone.getCollection()))
+                        .map(Tombstone::getEntityId)
+                        .toList(),
+                next.encode(),
+                hasMore,
+                reset
+        );
+    }
+
+    private <T> ChangeCursor earliest(ChangeCursor next, List<T> changes, Function<T, ChangeCursor> cursorOf) {
+        if (changes.size() <= maxChanges) {
+            return next;
+        }
+        ChangeCursor last = cursorOf.apply(changes.get(maxChanges - 1));
+        return last.compareTo(next) < 0 ? last : next;
+    }
+
+    private static ChangeCursor decode(String token) {
+        try {
+            // tokens issued before they carried an id decode to a plain point in time
+            return ChangeCursor.decode(token);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid sync token", e);
+        }
+    }
+}
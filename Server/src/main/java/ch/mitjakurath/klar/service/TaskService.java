@@ -1,15 +1,36 @@
 package ch.mitjakurath.klar.service;
 
+import ch.mitjakurath.klar.dto.CursorPage;
+import ch.mitjakurath.klar.dto.TaskBatchRequest;
+import ch.mitjakurath.klar.dto.TaskBatchResult;
 import ch.mitjakurath.klar.model.Task;
+import ch.mitjakurath.klar.model.Tombstone;
+import ch.mitjakurath.klar.repository.PageCursor;
 import ch.mitjakurath.klar.repository.TaskRepository;
+import ch.mitjakurath.klar.repository.TaskRepositoryCustom.PriorityTotal;
+import ch.mitjakurath.klar.repository.TaskRepositoryCustom.TaskStatsAggregate;
+import ch.mitjakurath.klar.repository.TombstoneRepository;
+import com.mongodb.bulk.BulkWriteError;
+import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 import java.time.LocalDateTime;
 import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.Set;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
 
 @Service
 public class TaskService {
@@ -17,54 +38,345 @@ public class TaskService {
     @Autowired
     private TaskRepository taskRepository;
 
+    @Autowired
+    private TombstoneRepository tombstoneRepository;
+
+    @Autowired
+    private DailyStatsService dailyStatsService;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private UserEventBus eventBus;
+
+    @Autowired
+    private CollectionVersions versions;
+
+    @Autowired
+    private RequestCoalescer coalescer;
+
     public List<Task> getAllTasksForUser(String userId) {
         return taskRepository.findByUserIdOrderByCreatedAtDesc(userId);
     }
 
+    /**
+     * With {@code includeArchived}, the page also holds the user's archived tasks, in the same order.
+     */
+    public CursorPage<Task> getTasksPage(
+            String userId, PageCursor after, int limit, Set<String> fields, boolean includeArchived) {
+        List<Task> tasks = taskRepository.findPage(userId, after, limit + 1, fields);
+        if (includeArchived) {
+            tasks = PageCursor.merge(tasks, taskRepository.findArchivedPage(userId, after, limit + 1, fields),
+                    limit + 1, task -> new PageCursor(task.getCreatedAt(), task.getId()));
+        }
+        return CursorPage.of(tasks, limit, last -> new PageCursor(last.getCreatedAt(), last.getId()).encode());
+    }
+
     public Optional<Task> getTaskById(String taskId) {
         return taskRepository.findById(taskId);
     }
 
     public Task createTask(Task task) {
-        return taskRepository.save(task);
+        Task createdTask = taskRepository.save(task);
+        dailyStatsService.changes().addTask(createdTask).apply();
+        versions.bump(createdTask.getUserId(), CollectionVersions.TASKS);
+        eventBus.publish(createdTask.getUserId(), "task.created", createdTask);
+        return createdTask;
     }
 
     public Task updateTask(Task task) {
         task.setUpdatedAt(LocalDateTime.now());
-        return taskRepository.save(task);
+        Task previousTask = taskRepository.replace(task);
+        dailyStatsService.changes().removeTask(previousTask).addTask(task).apply();
+        versions.bump(task.getUserId(), CollectionVersions.TASKS);
+        eventBus.publish(task.getUserId(), "task.updated", task);
+        return task;
     }
 
     public void deleteTask(String taskId) {
-        taskRepository.deleteById(taskId);
+        Task deletedTask = taskRepository.removeById(taskId);
+        if (deletedTask == null) {
+            return;
+        }
+        // before the rollup changes, so a concurrent rollup rebuild notices the delete
+        tombstoneRepository.insert(new Tombstone(
+                deletedTask.getUserId(), Tombstone.TASKS, taskId, LocalDateTime.now()));
+        dailyStatsService.changes().removeTask(deletedTask).apply();
+        versions.bump(deletedTask.getUserId(), CollectionVersions.TASKS);
+        eventBus.publish(deletedTask.getUserId(), "task.deleted", Map.of("id", taskId));
     }
 
-    public Task toggleTaskCompletion(String taskId) {
-        Optional<Task> taskOpt = taskRepository.findById(taskId);
-        if (taskOpt.isPresent()) {
-            Task task = taskOpt.get();
-            task.setCompleted(!task.isCompleted());
-            return taskRepository.save(task);
+    public Optional<Task> toggleTaskCompletion(String taskId, String userId) {
+        LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+        Task task = taskRepository.toggleCompletion(taskId, userId, now);
+        if (task == null) {
+            return Optional.empty();
+        }
+
+        DailyStatsService.Changes changes = dailyStatsService.changes().removeTask(task);
+        boolean completed = !task.isCompleted();
+        task.setCompleted(completed);
+        task.setCompletedAt(completed ? now : null);
+        task.setUpdatedAt(now);
+        changes.addTask(task).apply();
+        versions.bump(userId, CollectionVersions.TASKS);
+        eventBus.publish(userId, "task.updated", task);
+        return Optional.of(task);
+    }
+
+    /**
+     * Applies create, update, toggle and delete operations for one user. Ownership of all referenced
+     * tasks is checked with a single {@code $in} query and the writes go out as one unordered bulk write.
+     * Operations on the same id see the effect of earlier operations in the batch; such batches are
+     * written in order.
+     */
+    public List<TaskBatchResult> applyBatch(String userId, List<TaskBatchRequest.Operation> operations) {
+        Set<String> ids = new HashSet<>();
+        boolean dependent = false;
+        for (TaskBatchRequest.Operation operation : operations) {
+            if (operation.id() != null && !ids.add(operation.id())) {
+                dependent = true;
+            }
+        }
+
+        Map<String, Task> current = new HashMap<>();
+        Set<String> foreign = new HashSet<>();
+        for (Task task : taskRepository.findAllById(ids)) {
+            if (userId.equals(task.getUserId())) {
+                current.put(task.getId(), task);
+            } else {
+                foreign.add(task.getId());
+            }
+        }
+
+        TaskBatchResult[] results = new TaskBatchResult[operations.size()];
+        List<Integer> written = new ArrayList<>();
+        List<DailyStatsService.Changes> writtenChanges = new ArrayList<>();
+        BulkOperations bulk = mongoTemplate.bulkOps(
+                dependent ? BulkOperations.BulkMode.ORDERED : BulkOperations.BulkMode.UNORDERED,
+                Task.class
+        );
+        LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+
+        for (int index = 0; index < operations.size(); index++) {
+            TaskBatchRequest.Operation operation = operations.get(index);
+            String op = operation.op();
+            String id = operation.id();
+
+            if ("create".equals(op)) {
+                if (operation.task() == null || !operation.task().hasTitle()) {
+                    results[index] = TaskBatchResult.failed(index, op, id, TaskBatchResult.Status.INVALID, "title is required");
+                    continue;
+                }
+                Task task = operation.task().toTask(new ObjectId().toHexString(), userId);
+                bulk.insert(task);
+                current.put(task.getId(), task);
+                written.add(index);
+                writtenChanges.add(dailyStatsService.changes().addTask(task));
+                results[index] = TaskBatchResult.ok(index, op, task.getId(), task);
+                continue;
+            }
+
+            if (id == null) {
+                results[index] = TaskBatchResult.failed(index, op, null, TaskBatchResult.Status.INVALID, "id is required");
+                continue;
+            }
+            if (foreign.contains(id)) {
+                results[index] = TaskBatchResult.failed(index, op, id, TaskBatchResult.Status.FORBIDDEN, null);
+                continue;
+            }
+            Task existing = current.get(id);
+            if (existing == null) {
+                results[index] = TaskBatchResult.failed(index, op, id, TaskBatchResult.Status.NOT_FOUND, null);
+                continue;
+            }
+            Query owned = new Query(where("_id").is(id).and("userId").is(userId));
+
+            switch (op) {
+                case "update" -> {
+                    if (operation.task() == null || !operation.task().hasTitle()) {
+                        results[index] = TaskBatchResult.failed(index, op, id, TaskBatchResult.Status.INVALID, "title is required");
+                        continue;
+                    }
+                    Task task = operation.task().toTask(id, userId);
+                    task.setCreatedAt(existing.getCreatedAt());
+                    task.setUpdatedAt(now);
+                    bulk.replaceOne(owned, task);
+                    current.put(id, task);
+                    written.add(index);
+                    writtenChanges.add(dailyStatsService.changes().removeTask(existing).addTask(task));
+                    results[index] = TaskBatchResult.ok(index, op, id, task);
+                }
+                case "toggle" -> {
+                    Task task = copyOf(existing);
+                    boolean completed = !existing.isCompleted();
+                    task.setCompleted(completed);
+                    task.setCompletedAt(completed ? now : null);
+                    task.setUpdatedAt(now);
+                    Update update = new Update().set("completed", completed).set("updatedAt", now);
+                    if (completed) {
+                        update.set("completedAt", now);
+                    } else {
+                        update.unset("completedAt");
+                    }
+                    bulk.updateOne(owned, update);
+                    current.put(id, task);
+                    written.add(index);
+                    writtenChanges.add(dailyStatsService.changes().removeTask(existing).addTask(task));
+                    results[index] = TaskBatchResult.ok(index, op, id, task);
+                }
+                case "delete" -> {
+                    bulk.remove(owned);
+                    current.remove(id);
+                    written.add(index);
+                    writtenChanges.add(dailyStatsService.changes().removeTask(existing));
+                    results[index] = TaskBatchResult.ok(index, op, id, null);
+                }
+                default -> results[index] = TaskBatchResult.failed(
+                        index, op, id, TaskBatchResult.Status.INVALID, "unknown op: " + op);
+            }
+        }
+
+        if (written.isEmpty()) {
+            return List.of(results);
+        }
+
+        Set<Integer> failedWrites = new HashSet<>();
+        try {
+            bulk.execute();
+        } catch (BulkOperationException e) {
+            for (BulkWriteError error : e.getErrors()) {
+                failedWrites.add(error.getIndex());
+                markFailed(results, written.get(error.getIndex()), error.getMessage());
+            }
+            if (dependent && !e.getErrors().isEmpty()) {
+                // an ordered bulk write stops at the first error
+                for (int i = e.getErrors().get(0).getIndex() + 1; i < written.size(); i++) {
+                    failedWrites.add(i);
+                    markFailed(results, written.get(i), "not executed");
+                }
+            }
+        }
+
+        // before the rollup changes, so a concurrent rollup rebuild notices the deletes
+        List<Tombstone> tombstones = new ArrayList<>();
+        for (TaskBatchResult result : results) {
+            if (result.status() == TaskBatchResult.Status.OK && "delete".equals(result.op())) {
+                tombstones.add(new Tombstone(userId, Tombstone.TASKS, result.id(), now));
+            }
+        }
+        if (!tombstones.isEmpty()) {
+            tombstoneRepository.insert(tombstones);
+        }
+
+        DailyStatsService.Changes changes = dailyStatsService.changes();
+        for (int i = 0; i < writtenChanges.size(); i++) {
+            if (!failedWrites.contains(i)) {
+                changes.include(writtenChanges.get(i));
+            }
+        }
+        changes.apply();
+        versions.bump(userId, CollectionVersions.TASKS);
+
+        for (TaskBatchResult result : results) {
+            if (result.status() != TaskBatchResult.Status.OK) {
+                continue;
+            }
+            switch (result.op()) {
+                case "create" -> eventBus.publish(userId, "task.created", result.task());
+                case "delete" -> eventBus.publish(userId, "task.deleted", Map.of("id", result.id()));
+                default -> eventBus.publish(userId, "task.updated", result.task());
+            }
         }
-        throw new RuntimeException("Task not found");
+
+        return List.of(results);
+    }
+
+    private static void markFailed(TaskBatchResult[] results, int index, String error) {
+        TaskBatchResult result = results[index];
+        results[index] = TaskBatchResult.failed(
+                index, result.op(), result.id(), TaskBatchResult.Status.FAILED, error);
     }
 
+    private static Task copyOf(Task task) {
+        Task copy = new Task(task.getUserId(), task.getTitle());
+        copy.setId(task.getId());
+        copy.setDescription(task.getDescription());
+        copy.setCompleted(task.isCompleted());
+        copy.setCompletedAt(task.getCompletedAt());
+        copy.setPriority(task.getPriority());
+        copy.setDueDate(task.getDueDate());
+        copy.setCreatedAt(task.getCreatedAt());
+        copy.setUpdatedAt(task.getUpdatedAt());
+        return copy;
+    }
+
+    /**
+     * Returns the task stats, sharing the computation with concurrent requests of the same user.
+     */
     public Map<String, Object> getTaskStats(String userId) {
-        Map<String, Object> stats = new HashMap<>();
+        String version = versions.etag(userId, CollectionVersions.TASKS);
+        return coalescer.coalesce("task.stats", userId + ' ' + version, () -> computeTaskStats(userId));
+    }
 
-        long totalTasks = taskRepository.countByUserId(userId);
-        long completedTasks = taskRepository.countByUserIdAndCompleted(userId, true);
+    private Map<String, Object> computeTaskStats(String userId) {
+        Map<String, Object> stats = new HashMap<>();
 
-        LocalDateTime startOfDay = LocalDate.now().atStartOfDay();
+        LocalDate today = LocalDate.now();
+        LocalDateTime startOfDay = today.atStartOfDay();
         LocalDateTime endOfDay = startOfDay.plusDays(1);
+        LocalDateTime now = LocalDateTime.now();
+
+        long totalTasks;
+        long completedTasks;
+        long todayCompleted;
+        long overdueTasks;
+        List<PriorityTotal> priorities;
 
-        long todayCompleted = taskRepository.countByUserIdAndCompletedAndCreatedAtBetween(
-                userId, true, startOfDay, endOfDay);
+        if (dailyStatsService.isEnabled(userId)) {
+            DailyStatsService.TaskTotals totals = dailyStatsService.getTaskTotals(userId, today);
+            totalTasks = totals.totalTasks();
+            completedTasks = totals.completedTasks();
+            todayCompleted = totals.todayCompleted();
+            priorities = totals.byPriority();
+            overdueTasks = taskRepository.countByUserIdAndCompletedAndDueDateBefore(userId, false, now);
+        } else {
+            TaskStatsAggregate aggregate = taskRepository.aggregateTaskStats(
+                    userId, startOfDay, endOfDay, now);
+            // archived tasks are completed before the horizon, so they only add to the totals
+            List<PriorityTotal> archived = taskRepository.aggregateArchivedTaskStats(userId);
+            long archivedTasks = archived.stream().mapToLong(PriorityTotal::total).sum();
+            totalTasks = aggregate.totalCount() + archivedTasks;
+            completedTasks = aggregate.completedCount() + archivedTasks;
+            todayCompleted = aggregate.todayCompletedCount();
+            priorities = new ArrayList<>(aggregate.byPriority());
+            priorities.addAll(archived);
+            overdueTasks = aggregate.overdueCount();
+        }
+
+        Map<String, long[]> priorityCounts = new HashMap<>();
+        for (PriorityTotal priority : priorities) {
+            if (priority.priority() == null) {
+                continue;
+            }
+            long[] counts = priorityCounts.computeIfAbsent(priority.priority(), key -> new long[2]);
+            counts[0] += priority.total();
+            counts[1] += priority.completed();
+        }
+        Map<String, Object> byPriority = new HashMap<>();
+        priorityCounts.forEach((priority, counts) -> byPriority.put(priority, Map.of(
+                "total", counts[0],
+                "completed", counts[1]
+        )));
 
         stats.put("totalTasks", totalTasks);
         stats.put("completedTasks", completedTasks);
         stats.put("todayCompleted", todayCompleted);
+        stats.put("overdueTasks", overdueTasks);
+        stats.put("byPriority", byPriority);
         stats.put("completionRate", totalTasks > 0 ? (double) completedTasks / totalTasks : 0.0);
 
         return stats;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,299 @@
+package ch.mitjakurath.klar.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+
+/**
+ * Fans task and session changes out to the open event streams of a user. Each
+ * subscriber has a bounded queue that is drained on a virtual thread, so idle
+ * streams hold no thread at all. When a slow client lets its queue overflow the
+ * pending events are dropped and replaced by a single {@code resync} event.
+ * Events published on other instances arrive through the {@link UserEventRelay}.
+ */
+@Component
+public class UserEventBus {
+
+    public static final String RESYNC = "resync";
+
+    private static final String CONNECTED = "connected";
+    private static final Duration RECONNECT_TIME = Duration.ofSeconds(3);
+
+    private final Map<String, Set<Subscriber>> subscribers = new ConcurrentHashMap<>();
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+    private final ExecutorService senders = Executors.newVirtualThreadPerTaskExecutor();
+    private final ScheduledExecutorService heartbeats = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("sse-heartbeat").daemon().factory());
+    private final UserEventRelay relay;
+    private final Duration timeout;
+    private final int queueCapacity;
+
+    public UserEventBus(
+            UserEventRelay relay,
+            MeterRegistry meterRegistry,
+            @Value("${app.stream.timeout:PT30M}") Duration timeout,
+            @Value("${app.stream.heartbeat:PT25S}") Duration heartbeat,
+            @Value("${app.stream.queue-capacity:256}") int queueCapacity
+    ) {
+        this.relay = relay;
+        this.timeout = timeout;
+        this.queueCapacity = queueCapacity;
+        relay.listen(new UserEventRelay.Listener() {
+            @Override
+            public void event(String userId, String type, String json) {
+                deliver(userId, new Event(type, json, null));
+            }
+
+            @Override
+            public void missed() {
+                for (Set<Subscriber> userSubscribers : subscribers.values()) {
+                    userSubscribers.forEach(subscriber -> subscriber.offer(new Event(RESYNC, "", null)));
+                }
+            }
+        });
+        heartbeats.scheduleAtFixedRate(
+                this::heartbeat, heartbeat.toMillis(), heartbeat.toMillis(), TimeUnit.MILLISECONDS);
+        Gauge.builder("klar.stream.subscribers", subscriberCount, AtomicInteger::get)
+                .description("Open server-sent event streams")
+                .register(meterRegistry);
+    }
+
+    public SseEmitter subscribe(String userId) {
+        SseEmitter emitter = new SseEmitter(timeout.toMillis());
+        Subscriber subscriber = new Subscriber(userId, new EmitterTransport(emitter));
+        emitter.onCompletion(() -> remove(subscriber));
+        emitter.onTimeout(() -> remove(subscriber));
+        emitter.onError(e -> remove(subscriber));
+        add(subscriber);
+        return emitter;
+    }
+
+    /**
+     * Returns the user's events for a WebFlux response. Events are only emitted as the client requests
+     * them, so a slow client overflows its queue here just like a blocking one.
+     */
+    public Flux<ServerSentEvent<Object>> subscribeFlux(String userId) {
+        return Flux.<ServerSentEvent<Object>>create(sink -> {
+            Subscriber subscriber = new Subscriber(userId, new SinkTransport(sink));
+            sink.onRequest(requested -> subscriber.scheduleDrain());
+            sink.onDispose(() -> remove(subscriber));
+            add(subscriber);
+        }).take(timeout);
+    }
+
+    /**
+     * Queues an event for every open stream of the user, on this instance and the others. Never blocks the
+     * caller.
+     */
+    public void publish(String userId, String type, Object data) {
+        deliver(userId, new Event(type, data, null));
+        relay.send(userId, type, data);
+    }
+
+    private void deliver(String userId, Event event) {
+        Set<Subscriber> userSubscribers = subscribers.get(userId);
+        if (userSubscribers == null) {
+            return;
+        }
+        for (Subscriber subscriber : userSubscribers) {
+            subscriber.offer(event);
+        }
+    }
+
+    private void heartbeat() {
+        for (Set<Subscriber> userSubscribers : subscribers.values()) {
+            for (Subscriber subscriber : userSubscribers) {
+                if (subscriber.pending.get() == 0) {
+                    subscriber.offer(new Event(null, null, "ping"));
+                }
+            }
+        }
+    }
+
+    private void add(Subscriber subscriber) {
+        subscribers.computeIfAbsent(subscriber.userId, key -> ConcurrentHashMap.newKeySet()).add(subscriber);
+        subscriberCount.incrementAndGet();
+        subscriber.offer(new Event(null, null, CONNECTED));
+    }
+
+    private void remove(Subscriber subscriber) {
+        subscribers.computeIfPresent(subscriber.userId, (key, userSubscribers) -> {
+            if (userSubscribers.remove(subscriber)) {
+                subscriberCount.decrementAndGet();
+            }
+            return userSubscribers.isEmpty() ? null : userSubscribers;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        heartbeats.shutdownNow();
+        for (Set<Subscriber> userSubscribers : subscribers.values()) {
+            userSubscribers.forEach(subscriber -> subscriber.transport.close(null));
+        }
+        senders.shutdown();
+    }
+
+    /** An event, or a comment if {@code comment} is set. */
+    private record Event(String name, Object data, String comment) {}
+
+    /** Where the events of one subscriber are written to. */
+    private interface Transport {
+
+        /** Whether the client can take another event right now. */
+        boolean ready();
+
+        void send(Event event) throws IOException;
+
+        void close(Throwable error);
+    }
+
+    private static final class EmitterTransport implements Transport {
+
+        private final SseEmitter emitter;
+
+        private EmitterTransport(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        @Override
+        public boolean ready() {
+            // a slow client blocks send() instead
+            return true;
+        }
+
+        @Override
+        public void send(Event event) throws IOException {
+            if (CONNECTED.equals(event.comment())) {
+                emitter.send(SseEmitter.event().comment(CONNECTED).reconnectTime(RECONNECT_TIME.toMillis()));
+            } else if (event.comment() != null) {
+                emitter.send(SseEmitter.event().comment(event.comment()));
+            } else {
+                emitter.send(SseEmitter.event().name(event.name()).data(event.data()));
+            }
+        }
+
+        @Override
+        public void close(Throwable error) {
+            if (error != null) {
+                emitter.completeWithError(error);
+            } else {
+                emitter.complete();
+            }
+        }
+    }
+
+    private static final class SinkTransport implements Transport {
+
+        private final FluxSink<ServerSentEvent<Object>> sink;
+
+        private SinkTransport(FluxSink<ServerSentEvent<Object>> sink) {
+            this.sink = sink;
+        }
+
+        @Override
+        public boolean ready() {
+            return sink.requestedFromDownstream() > 0 && !sink.isCancelled();
+        }
+
+        @Override
+        public void send(Event event) {
+            if (CONNECTED.equals(event.comment())) {
+                sink.next(ServerSentEvent.builder().comment(CONNECTED).retry(RECONNECT_TIME).build());
+            } else if (event.comment() != null) {
+                sink.next(ServerSentEvent.builder().comment(event.comment()).build());
+            } else {
+                sink.next(ServerSentEvent.builder(event.data()).event(event.name()).build());
+            }
+        }
+
+        @Override
+        public void close(Throwable error) {
+            if (error != null) {
+                sink.error(error);
+            } else {
+                sink.complete();
+            }
+        }
+    }
+
+    private final class Subscriber {
+
+        private final String userId;
+        private final Transport transport;
+        private final Queue<Event> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pending = new AtomicInteger();
+        private final AtomicBoolean overflowed = new AtomicBoolean();
+        private final AtomicBoolean draining = new AtomicBoolean();
+
+        private Subscriber(String userId, Transport transport) {
+            this.userId = userId;
+            this.transport = transport;
+        }
+
+        void offer(Event event) {
+            if (pending.incrementAndGet() > queueCapacity) {
+                pending.decrementAndGet();
+                overflowed.set(true);
+            } else {
+                queue.add(event);
+            }
+            scheduleDrain();
+        }
+
+        void scheduleDrain() {
+            if (draining.compareAndSet(false, true)) {
+                senders.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            try {
+                if (overflowed.get() && transport.ready()) {
+                    overflowed.set(false);
+                    // the client missed events, so drop what is queued and let it refetch
+                    while (queue.poll() != null) {
+                        pending.decrementAndGet();
+                    }
+                    transport.send(new Event(RESYNC, "", null));
+                }
+                while (transport.ready()) {
+                    Event event = queue.poll();
+                    if (event == null) {
+                        break;
+                    }
+                    pending.decrementAndGet();
+                    transport.send(event);
+                }
+            } catch (IOException | IllegalStateException e) {
+                remove(this);
+                transport.close(e);
+                return;
+            } finally {
+                draining.set(false);
+            }
+            if ((pending.get() > 0 || overflowed.get()) && transport.ready()) {
+                scheduleDrain();
+            }
+        }
+    }
+}
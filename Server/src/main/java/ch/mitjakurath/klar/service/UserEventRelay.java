@@ -0,0 +1,258 @@
+package ch.mitjakurath.klar.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.CursorType;
+import com.mongodb.client.MongoCursor;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.mongodb.core.CollectionOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Passes the events of {@link UserEventBus} between instances, so a stream sees the changes a user makes
+ * through any instance. Every event is appended to the capped collection {@code user_events}, which each
+ * instance follows with a tailable cursor on a thread of its own, handing the events of the other instances
+ * to its bus as JSON. The collection only keeps the latest {@code app.stream.fan-out.max-size} bytes of
+ * events, which instances read within moments of their insertion.
+ * <p>
+ * A cursor that fails is reopened after the last event it returned, and the bus tells its subscribers to
+ * resync, since events may have been missed meanwhile. Instances whose clocks differ by more than
+ * {@code app.sync.clock-margin} may miss each other's events after a cursor was reopened. Without a
+ * collection, e.g. on servers that do not support capped collections, events stay on their instance.
+ */
+@Component
+public class UserEventRelay {
+
+    private static final Logger log = LoggerFactory.getLogger(UserEventRelay.class);
+
+    private static final String EVENTS = "user_events";
+    private static final String STARTED = "relay.started";
+    private static final Duration RETRY_DELAY = Duration.ofSeconds(1);
+
+    /** Receives the events published on other instances. */
+    public interface Listener {
+
+        void event(String userId, String type, String json);
+
+        /** Events may have been missed. */
+        void missed();
+    }
+
+    private final MongoTemplate mongoTemplate;
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+    private final long maxSize;
+    private final Duration clockMargin;
+    private final String instanceId = UUID.randomUUID().toString();
+    private final ExecutorService senders = Executors.newVirtualThreadPerTaskExecutor();
+    private volatile Listener listener;
+    // set once the collection is ready
+    private volatile boolean running;
+    private volatile boolean stopped;
+    private Thread follower;
+
+    public UserEventRelay(
+            MongoTemplate mongoTemplate,
+            ObjectMapper objectMapper,
+            @Value("${app.stream.fan-out.enabled:true}") boolean enabled,
+            @Value("${app.stream.fan-out.max-size:16777216}") long maxSize,
+            @Value("${app.sync.clock-margin:PT5S}") Duration clockMargin
+    ) {
+        this.mongoTemplate = mongoTemplate;
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+        this.maxSize = maxSize;
+        this.clockMargin = clockMargin;
+    }
+
+    @PostConstruct
+    void start() {
+        if (enabled) {
+            // like the index runner, so startup does not wait for Mongo
+            follower = Thread.ofPlatform().name("sse-relay").daemon().start(this::run);
+        }
+    }
+
+    private void run() {
+        Document started = null;
+        while (started == null && !stopped) {
+            try {
+                started = announce();
+            } catch (DataAccessResourceFailureException e) {
+                log.debug("Could not reach Mongo to pass events between instances, retrying: {}", e.getMessage());
+                if (!sleep()) {
+                    return;
+                }
+            } catch (DataAccessException e) {
+                log.warn("Events are not passed between instances: {}", e.getMessage());
+                return;
+            }
+        }
+        if (started != null) {
+            running = true;
+            follow(started);
+        }
+    }
+
+    /**
+     * Creates the collection if needed and appends a first event of this instance, where it starts following:
+     * a tailable cursor on an empty collection ends at once.
+     */
+    private Document announce() {
+        if (!mongoTemplate.collectionExists(EVENTS)) {
+            try {
+                mongoTemplate.createCollection(EVENTS, CollectionOptions.empty().capped().size(maxSize));
+            } catch (DataAccessException e) {
+                // another instance created it first
+                if (!mongoTemplate.collectionExists(EVENTS)) {
+                    throw e;
+                }
+            }
+        }
+        Document started = event(null, STARTED, null);
+        mongoTemplate.insert(started, EVENTS);
+        return started;
+    }
+
+    /**
+     * Whether events are passed between instances, which starts shortly after startup.
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    public void listen(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Passes the event to the other instances. Serializes the data right away, so it may change afterwards,
+     * and stores it on a virtual thread.
+     */
+    public void send(String userId, String type, Object data) {
+        if (!running) {
+            return;
+        }
+        String json;
+        try {
+            json = objectMapper.writeValueAsString(data);
+        } catch (JsonProcessingException e) {
+            log.warn("Could not pass a {} event to the other instances", type, e);
+            return;
+        }
+        senders.execute(() -> {
+            try {
+                mongoTemplate.insert(event(userId, type, json), EVENTS);
+            } catch (RuntimeException e) {
+                log.warn("Could not pass a {} event to the other instances: {}", type, e.getMessage());
+            }
+        });
+    }
+
+    private Document event(String userId, String type, String json) {
+        return new Document("_id", new ObjectId())
+                .append("instance", instanceId)
+                .append("userId", userId)
+                .append("type", type)
+                .append("data", json)
+                .append("at", new Date());
+    }
+
+    /**
+     * Follows the collection from the event after {@code last}, skipping the events written before it.
+     */
+    private void follow(Document last) {
+        while (!stopped) {
+            Document after = last;
+            // natural order is insertion order; the filter only bounds how much has to be skipped
+            Document recent = new Document("at", new Document("$gte",
+                    new Date(after.getDate("at").getTime() - clockMargin.toMillis())));
+            boolean skipping = true;
+            try (MongoCursor<Document> cursor = mongoTemplate.getCollection(EVENTS).find(recent)
+                    .cursorType(CursorType.TailableAwait)
+                    .maxAwaitTime(RETRY_DELAY.toMillis(), TimeUnit.MILLISECONDS)
+                    .iterator()) {
+                while (!stopped) {
+                    Document event = cursor.tryNext();
+                    if (event == null) {
+                        if (cursor.getServerCursor() == null) {
+                            break;
+                        }
+                        continue;
+                    }
+                    if (skipping) {
+                        boolean reached = event.get("_id").equals(after.get("_id"));
+                        // unless the last event seen has been dropped from the collection meanwhile
+                        long ahead = event.getDate("at").getTime() - after.getDate("at").getTime();
+                        boolean passed = ahead > 2 * clockMargin.toMillis();
+                        skipping = !reached && !passed;
+                        if (!passed) {
+                            continue;
+                        }
+                    }
+                    last = event;
+                    deliver(event);
+                }
+            } catch (RuntimeException e) {
+                if (stopped) {
+                    return;
+                }
+                log.warn("Following the events of other instances failed, retrying: {}", e.getMessage());
+            }
+            if (stopped) {
+                return;
+            }
+            Listener current = listener;
+            if (current != null) {
+                current.missed();
+            }
+            if (!sleep()) {
+                return;
+            }
+        }
+    }
+
+    private boolean sleep() {
+        try {
+            Thread.sleep(RETRY_DELAY);
+            return true;
+        } catch (InterruptedException e) {
+            return false;
+        }
+    }
+
+    private void deliver(Document event) {
+        Listener current = listener;
+        if (current == null
+                || instanceId.equals(event.getString("instance"))
+                || STARTED.equals(event.getString("type"))) {
+            return;
+        }
+        current.event(event.getString("userId"), event.getString("type"), event.getString("data"));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        stopped = true;
+        running = false;
+        if (follower != null) {
+            follower.interrupt();
+        }
+        senders.shutdown();
+    }
+}
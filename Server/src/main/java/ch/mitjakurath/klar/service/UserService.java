@@ -1,7 +1,6 @@
 package ch.mitjakurath.klar.service;
 
 import ch.mitjakurath.klar.model.User;
-import ch.mitjakurath.klar.model.UserSettings;
 import ch.mitjakurath.klar.repository.UserRepository;
 import ch.mitjakurath.klar.repository.UserSettingsRepository;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -21,6 +20,9 @@ public class UserService {
     @Autowired
     private UserSettingsRepository userSettingsRepository;
 
+    @Autowired
+    private KlarUserDetailsService userDetailsService;
+
     public User findOrCreateUser(OAuth2User oAuth2User, String provider) {
         String email = oAuth2User.getAttribute("email");
         String name = oAuth2User.getAttribute("name");
@@ -37,8 +39,7 @@ public class UserService {
         newUser.setAvatarUrl(avatarUrl);
         User savedUser = userRepository.save(newUser);
 
-        UserSettings settings = new UserSettings(savedUser.getId());
-        userSettingsRepository.save(settings);
+        userSettingsRepository.findOrCreate(savedUser.getId());
 
         return savedUser;
     }
@@ -53,6 +54,7 @@ public class UserService {
 
     public void deleteUser(String userId) {
         userRepository.deleteById(userId);
+        userDetailsService.evictUser(userId);
     }
 
     public Optional<User> findById(String userId) {
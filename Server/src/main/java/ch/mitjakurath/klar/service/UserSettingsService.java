@@ -2,28 +2,109 @@ package ch.mitjakurath.klar.service;
 
 import ch.mitjakurath.klar.model.UserSettings;
 import ch.mitjakurath.klar.repository.UserSettingsRepository;
-import org.springframework.beans.factory.annotation.Autowired;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.CacheManager;
 import org.springframework.stereotype.Service;
 
-import java.util.Optional;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
 
+/**
+ * Reads settings through a bounded in-process cache. Every entry holds the settings ETag that was current
+ * before it was loaded, and a read for a different ETag, which another instance may have bumped, loads the
+ * settings again, so a response never holds settings older than its ETag. If {@code app.settings.cache.l2}
+ * names a cache of the application's {@link CacheManager} (e.g. a Redis cache shared by all instances), it is
+ * consulted on a local miss, keyed by user and ETag. Loads run on virtual threads outside of any cache lock,
+ * so they never pin a virtual request thread.
+ */
 @Service
 public class UserSettingsService {
 
-    @Autowired
-    private UserSettingsRepository settingsRepository;
+    private final UserSettingsRepository settingsRepository;
+    private final CollectionVersions versions;
+    private final AsyncCache<String, VersionedSettings> settings;
+    private final org.springframework.cache.Cache sharedSettings;
 
-    public UserSettings getUserSettings(String userId) {
-        Optional<UserSettings> settings = settingsRepository.findByUserId(userId);
-        if (settings.isPresent()) {
-            return settings.get();
+    public UserSettingsService(
+            UserSettingsRepository settingsRepository,
+            CollectionVersions versions,
+            MeterRegistry meterRegistry,
+            ObjectProvider<CacheManager> cacheManager,
+            @Value("${app.settings.cache.max-size:10000}") long maxSize,
+            @Value("${app.settings.cache.ttl:PT1M}") Duration ttl,
+            @Value("${app.settings.cache.l2:}") String sharedCacheName
+    ) {
+        this.settingsRepository = settingsRepository;
+        this.versions = versions;
+        this.settings = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .buildAsync();
+        CaffeineCacheMetrics.monitor(meterRegistry, settings.synchronous(), "user.settings");
+
+        CacheManager manager = sharedCacheName.isEmpty() ? null : cacheManager.getIfAvailable();
+        this.sharedSettings = manager != null ? manager.getCache(sharedCacheName) : null;
+    }
+
+    /**
+     * Returns the user's settings as of the given settings ETag or later.
+     */
+    public UserSettings getUserSettings(String userId, String etag) {
+        try {
+            return getUserSettingsAsync(userId, etag).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
         }
+    }
 
-        UserSettings defaultSettings = new UserSettings(userId);
-        return settingsRepository.save(defaultSettings);
+    public CompletableFuture<UserSettings> getUserSettingsAsync(String userId, String etag) {
+        CompletableFuture<VersionedSettings> cached = settings.get(userId, this::loadSettings);
+        return cached.thenCompose(entry -> {
+            if (entry.etag().equals(etag)) {
+                return CompletableFuture.completedFuture(entry.settings());
+            }
+            // written since the entry was loaded, possibly on another instance
+            settings.asMap().remove(userId, cached);
+            return settings.get(userId, this::loadSettings).thenApply(VersionedSettings::settings);
+        });
     }
 
     public UserSettings updateUserSettings(UserSettings settings) {
-        return settingsRepository.save(settings);
+        settings.setUpdatedAt(LocalDateTime.now());
+        UserSettings savedSettings = settingsRepository.replaceByUserId(settings);
+        versions.bump(settings.getUserId(), CollectionVersions.SETTINGS);
+        this.settings.synchronous().invalidate(settings.getUserId());
+        return savedSettings;
     }
-}
\ No newline at end of file
+
+    private VersionedSettings loadSettings(String userId) {
+        // read first: writes bump the version after storing, so the settings are at least this new
+        String etag = versions.etag(userId, CollectionVersions.SETTINGS);
+        if (sharedSettings == null) {
+            return new VersionedSettings(settingsRepository.findOrCreate(userId), etag);
+        }
+        // Cache.get(key, loader) would load under the shared cache's lock
+        String key = userId + ' ' + etag;
+        UserSettings shared = sharedSettings.get(key, UserSettings.class);
+        if (shared == null) {
+            shared = settingsRepository.findOrCreate(userId);
+            sharedSettings.put(key, shared);
+        }
+        return new VersionedSettings(shared, etag);
+    }
+
+    private record VersionedSettings(UserSettings settings, String etag) {}
+}
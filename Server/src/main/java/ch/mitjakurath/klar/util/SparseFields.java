@@ -0,0 +1,60 @@
+package ch.mitjakurath.klar.util;
+
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import org.springframework.http.converter.json.MappingJacksonValue;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Sparse field selection ({@code ?fields=title,completed}) for documents
+ * annotated with {@code @JsonFilter(SparseFields.FILTER_ID)}.
+ */
+public final class SparseFields {
+
+    public static final String FILTER_ID = "sparseFields";
+
+    private static final SimpleFilterProvider ALL_FIELDS = new SimpleFilterProvider()
+            .setDefaultFilter(SimpleBeanPropertyFilter.serializeAll());
+
+    private SparseFields() {}
+
+    public static SimpleFilterProvider allFields() {
+        return ALL_FIELDS;
+    }
+
+    /**
+     * Parses a comma separated field list.
+     *
+     * @throws IllegalArgumentException if a field is not in {@code allowed}
+     */
+    public static Set<String> parse(String fields, Set<String> allowed) {
+        if (fields == null || fields.isBlank()) {
+            return Set.of();
+        }
+        Set<String> selected = Arrays.stream(fields.split(","))
+                .map(String::trim)
+                .filter(field -> !field.isEmpty())
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+        for (String field : selected) {
+            if (!allowed.contains(field)) {
+                throw new IllegalArgumentException("Unknown field: " + field);
+            }
+        }
+        return selected;
+    }
+
+    public static MappingJacksonValue select(Object body, Set<String> fields) {
+        MappingJacksonValue value = new MappingJacksonValue(body);
+        if (!fields.isEmpty()) {
+            Set<String> visible = new LinkedHashSet<>(fields);
+            visible.add("id");
+            value.setFilters(new SimpleFilterProvider()
+                    .addFilter(FILTER_ID, SimpleBeanPropertyFilter.filterOutAllExcept(visible)));
+        }
+        return value;
+    }
+}
@@ -0,0 +1,72 @@
+package ch.mitjakurath.klar;
+
+import de.bwaldvogel.mongo.MongoServer;
+import de.bwaldvogel.mongo.backend.memory.MemoryBackend;
+import java.util.UUID;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.DockerClientFactory;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.utility.DockerImageName;
+
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Base class of the tests that read and write MongoDB. They run against a {@code mongo:7.0} container when
+ * Docker is available and against the in-memory mongo-java-server otherwise, which lacks some features;
+ * tests relying on them call {@link #assumeRealMongo()}. All tests share one application context and
+ * database, so each one works with its own {@link #newUserId() user}.
+ */
+@SpringBootTest(properties = {
+        "app.stats.rollups.enabled=true",
+        // rollup rebuilds wait for the clock margin before checking for concurrent writes
+        "app.sync.clock-margin=PT0.5S",
+        "app.stats.rollups.repair-interval=PT0.2S"
+})
+public abstract class MongoTestSupport {
+
+    private static final boolean REAL_MONGO = DockerClientFactory.instance().isDockerAvailable();
+    private static final String URI = REAL_MONGO ? startContainer() : startInMemory();
+
+    @DynamicPropertySource
+    static void mongoProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.data.mongodb.uri", () -> URI);
+        if (!REAL_MONGO) {
+            registry.add("app.mongo.query-plans.check-on-startup", () -> false);
+            registry.add("app.mongo.query-plans.sample-interval", () -> "PT0S");
+            registry.add("app.stream.fan-out.enabled", () -> false);
+        }
+    }
+
+    /**
+     * Skips the test on the in-memory server, which has no update pipelines, time-series or capped collections
+     * or {@code explain}.
+     */
+    protected static void assumeRealMongo() {
+        assumeTrue(REAL_MONGO, "needs a MongoDB container");
+    }
+
+    /**
+     * For {@code @EnabledIf} on test classes whose application context needs those features to start.
+     */
+    protected static boolean isRealMongo() {
+        return REAL_MONGO;
+    }
+
+    protected static String newUserId() {
+        return UUID.randomUUID().toString();
+    }
+
+    private static String startContainer() {
+        MongoDBContainer container = new MongoDBContainer(DockerImageName.parse("mongo:7.0"));
+        container.start();
+        return container.getReplicaSetUrl("klar");
+    }
+
+    private static String startInMemory() {
+        MongoServer server = new MongoServer(new MemoryBackend());
+        var address = server.bind();
+        return "mongodb://" + address.getHostString() + ":" + address.getPort() + "/klar";
+    }
+}
@@ -0,0 +1,90 @@
+package ch.mitjakurath.klar.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RateLimiterTests {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    // one token every 1000 seconds, so nothing refills while a test runs
+    private RateLimiter limiter(boolean enabled, int capacity) {
+        return new RateLimiter(meterRegistry, enabled, capacity, 0.001, 1000);
+    }
+
+    @Test
+    void allowsABurstUpToTheCapacity() {
+        RateLimiter limiter = limiter(true, 3);
+
+        assertThat(limiter.acquire("user")).isZero();
+        assertThat(limiter.acquire("user")).isZero();
+        assertThat(limiter.acquire("user")).isZero();
+        long wait = limiter.acquire("user");
+
+        assertThat(wait).isPositive().isLessThanOrEqualTo(TimeUnit.SECONDS.toNanos(1000));
+        assertThat(meterRegistry.counter("klar.rate-limit.rejected").count()).isEqualTo(1);
+    }
+
+    @Test
+    void keepsOneBucketPerUser() {
+        RateLimiter limiter = limiter(true, 1);
+
+        assertThat(limiter.acquire("user")).isZero();
+        assertThat(limiter.acquire("user")).isPositive();
+        assertThat(limiter.acquire("other")).isZero();
+    }
+
+    @Test
+    void refillsOverTime() throws InterruptedException {
+        // one token every 10 milliseconds
+        RateLimiter limiter = new RateLimiter(meterRegistry, true, 1, 100, 1000);
+        assertThat(limiter.acquire("user")).isZero();
+
+        Thread.sleep(20);
+
+        assertThat(limiter.acquire("user")).isZero();
+    }
+
+    @Test
+    void grantsExactlyTheCapacityToConcurrentRequests() throws Exception {
+        RateLimiter limiter = limiter(true, 50);
+
+        List<Future<Long>> waits = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(8)) {
+            for (int i = 0; i < 200; i++) {
+                waits.add(executor.submit(() -> limiter.acquire("user")));
+            }
+        }
+        int granted = 0;
+        for (Future<Long> wait : waits) {
+            if (wait.get() == 0) {
+                granted++;
+            }
+        }
+
+        assertThat(granted).isEqualTo(50);
+    }
+
+    @Test
+    void allowsEverythingWhenDisabled() {
+        RateLimiter limiter = limiter(false, 1);
+
+        assertThat(limiter.acquire("user")).isZero();
+        assertThat(limiter.acquire("user")).isZero();
+    }
+
+    @Test
+    void roundsRetryAfterUpToWholeSeconds() {
+        assertThat(RateLimiter.retryAfterSeconds(1)).isEqualTo(1);
+        assertThat(RateLimiter.retryAfterSeconds(TimeUnit.SECONDS.toNanos(2))).isEqualTo(2);
+        assertThat(RateLimiter.retryAfterSeconds(TimeUnit.SECONDS.toNanos(2) + 1)).isEqualTo(3);
+    }
+}
@@ -0,0 +1,45 @@
+package ch.mitjakurath.klar.repository;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Base64;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+class ChangeCursorTests {
+
+    private static final LocalDateTime T = LocalDateTime.of(2025, 3, 14, 9, 26, 53, 589_000_000);
+
+    @Test
+    void decodesWhatItEncodes() {
+        ChangeCursor cursor = new ChangeCursor(T, "65f2c0ffee0000000000abcd");
+
+        assertThat(ChangeCursor.decode(cursor.encode())).isEqualTo(cursor);
+        assertThat(ChangeCursor.decode(ChangeCursor.from(T).encode())).isEqualTo(ChangeCursor.from(T));
+    }
+
+    @Test
+    void decodesPlainPointsInTime() {
+        long millis = T.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        String token = Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(Long.toString(millis).getBytes(StandardCharsets.UTF_8));
+
+        assertThat(ChangeCursor.decode(token)).isEqualTo(ChangeCursor.from(T));
+    }
+
+    @Test
+    void rejectsMalformedCursors() {
+        assertThatIllegalArgumentException().isThrownBy(() -> ChangeCursor.decode("not a cursor"));
+        assertThatIllegalArgumentException().isThrownBy(() -> ChangeCursor.decode("bm90IGEgbnVtYmVy"));
+    }
+
+    @Test
+    void ordersByTimeThenId() {
+        assertThat(ChangeCursor.from(T)).isLessThan(new ChangeCursor(T, "a"));
+        assertThat(new ChangeCursor(T, "a")).isLessThan(new ChangeCursor(T, "b"));
+        assertThat(new ChangeCursor(T, "b")).isLessThan(ChangeCursor.from(T.plusNanos(1_000_000)));
+    }
+}
@@ -0,0 +1,45 @@
+package ch.mitjakurath.klar.repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Function;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+class PageCursorTests {
+
+    private static final LocalDateTime T = LocalDateTime.of(2025, 3, 14, 9, 26, 53, 589_000_000);
+
+    @Test
+    void decodesWhatItEncodes() {
+        PageCursor cursor = new PageCursor(T, "65f2c0ffee0000000000abcd");
+
+        assertThat(PageCursor.decode(cursor.encode())).isEqualTo(cursor);
+    }
+
+    @Test
+    void encodesUrlSafe() {
+        assertThat(new PageCursor(T, "a?b/c+d").encode()).matches("[A-Za-z0-9_-]+");
+    }
+
+    @Test
+    void rejectsMalformedCursors() {
+        assertThatIllegalArgumentException().isThrownBy(() -> PageCursor.decode("not a cursor"));
+        assertThatIllegalArgumentException().isThrownBy(() -> PageCursor.decode("bm9zZXBhcmF0b3I"));
+    }
+
+    @Test
+    void mergeKeepsTheNewestFirstOrder() {
+        PageCursor a = new PageCursor(T.plusSeconds(2), "a");
+        PageCursor b = new PageCursor(T.plusSeconds(1), "b");
+        PageCursor c = new PageCursor(T, "c");
+        PageCursor d = new PageCursor(T, "d");
+
+        List<PageCursor> merged = PageCursor.merge(List.of(a, c), List.of(d, b), 3, Function.identity());
+
+        // equal timestamps are ordered by id, descending like the queries
+        assertThat(merged).containsExactly(a, b, d);
+    }
+}
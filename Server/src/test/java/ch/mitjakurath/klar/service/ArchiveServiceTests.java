@@ -0,0 +1,91 @@
+package ch.mitjakurath.klar.service;
+
+import ch.mitjakurath.klar.MongoTestSupport;
+import ch.mitjakurath.klar.model.Task;
+import ch.mitjakurath.klar.repository.TaskRepository;
+import ch.mitjakurath.klar.repository.TaskRepositoryCustom.PriorityTotal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ArchiveServiceTests extends MongoTestSupport {
+
+    @Autowired
+    private ArchiveService archiveService;
+
+    @Autowired
+    private DailyStatsService dailyStatsService;
+
+    @Autowired
+    private TaskRepository taskRepository;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    private String userId;
+
+    @BeforeEach
+    void setUp() {
+        userId = newUserId();
+        mongoTemplate.insert(new Document("_id", userId).append("email", userId + "@example.com"), "users");
+    }
+
+    @Test
+    void archiveMovesOldCompletedTasks() {
+        Task old = taskRepository.save(task("Old", "high", LocalDateTime.now().minusDays(400)));
+        Task recent = taskRepository.save(task("Recent", "high", LocalDateTime.now().minusDays(2)));
+
+        archiveService.archive();
+
+        assertThat(taskRepository.findById(old.getId())).isEmpty();
+        assertThat(taskRepository.findById(recent.getId())).isPresent();
+        assertThat(mongoTemplate.findById(old.getId(), Task.class, Task.ARCHIVE)).isNotNull();
+        assertThat(taskRepository.aggregateArchivedTaskStats(userId)).singleElement().satisfies(priority -> {
+            assertThat(priority.priority()).isEqualTo("high");
+            assertThat(priority.total()).isEqualTo(1);
+            assertThat(priority.completed()).isEqualTo(1);
+        });
+    }
+
+    @Test
+    void archivedTasksStayCountedInTheRollups() {
+        LocalDateTime longAgo = LocalDateTime.now().minusDays(400);
+        taskRepository.save(task("Old", "low", longAgo));
+        taskRepository.save(task("Older", "high", longAgo.minusDays(1)));
+
+        archiveService.archive();
+        dailyStatsService.rebuild(userId);
+
+        DailyStatsService.TaskTotals totals = dailyStatsService.getTaskTotals(userId, LocalDate.now());
+        assertThat(totals.totalTasks()).isEqualTo(2);
+        assertThat(totals.completedTasks()).isEqualTo(2);
+        assertThat(totals.byPriority()).extracting(PriorityTotal::priority).containsExactlyInAnyOrder("low", "high");
+    }
+
+    @Test
+    void rebuildCountsATaskBeingMovedOnce() {
+        // archiving has copied the task but not yet removed it from the active collection
+        Task moving = taskRepository.save(task("Moving", "high", LocalDateTime.now().minusDays(400)));
+        mongoTemplate.insert(moving, Task.ARCHIVE);
+
+        dailyStatsService.rebuild(userId);
+
+        assertThat(dailyStatsService.getTaskTotals(userId, LocalDate.now()).totalTasks()).isEqualTo(1);
+    }
+
+    private Task task(String title, String priority, LocalDateTime completedAt) {
+        Task task = new Task(userId, title);
+        task.setPriority(priority);
+        task.setCompleted(true);
+        task.setCreatedAt(completedAt.minusDays(1));
+        task.setCompletedAt(completedAt);
+        task.setUpdatedAt(LocalDateTime.now().minusMinutes(1));
+        return task;
+    }
+}
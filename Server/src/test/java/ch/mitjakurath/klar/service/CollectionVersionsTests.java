@@ -0,0 +1,83 @@
+package ch.mitjakurath.klar.service;
+
+import ch.mitjakurath.klar.MongoTestSupport;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CollectionVersionsTests extends MongoTestSupport {
+
+    @Autowired
+    private CollectionVersions versions;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+
+    private String userId;
+
+    @BeforeEach
+    void setUp() {
+        userId = newUserId();
+    }
+
+    @Test
+    void bumpChangesTheEtagOfThatCollectionOnly() {
+        // the first write of a user also sets the epoch, which all their ETags start with
+        versions.bump(userId, CollectionVersions.SETTINGS);
+        String tasks = versions.etag(userId, CollectionVersions.TASKS);
+        String sessions = versions.etag(userId, CollectionVersions.SESSIONS);
+
+        versions.bump(userId, CollectionVersions.TASKS);
+
+        assertThat(versions.etag(userId, CollectionVersions.TASKS)).isNotEqualTo(tasks);
+        assertThat(versions.etag(userId, CollectionVersions.SESSIONS)).isEqualTo(sessions);
+    }
+
+    @Test
+    void keepsUsersApart() {
+        String etag = versions.etag(userId, CollectionVersions.TASKS);
+
+        versions.bump(newUserId(), CollectionVersions.TASKS);
+
+        assertThat(versions.etag(userId, CollectionVersions.TASKS)).isEqualTo(etag);
+    }
+
+    @Test
+    void instancesServeTheSameEtags() {
+        // e.g. another instance behind the load balancer
+        CollectionVersions other = new CollectionVersions(mongoTemplate, reactiveMongoTemplate);
+        versions.bump(userId, CollectionVersions.TASKS);
+        String etag = versions.etag(userId, CollectionVersions.TASKS);
+
+        assertThat(other.etag(userId, CollectionVersions.TASKS)).isEqualTo(etag);
+
+        other.bump(userId, CollectionVersions.TASKS);
+
+        assertThat(versions.etag(userId, CollectionVersions.TASKS)).isNotEqualTo(etag);
+    }
+
+    @Test
+    void reactiveEtagsMatch() {
+        assertThat(versions.reactiveEtag(userId, CollectionVersions.TASKS, "stats").block())
+                .isEqualTo(versions.etag(userId, CollectionVersions.TASKS, "stats"));
+
+        versions.bump(userId, CollectionVersions.TASKS);
+
+        assertThat(versions.reactiveEtag(userId, CollectionVersions.TASKS, "stats").block())
+                .isEqualTo(versions.etag(userId, CollectionVersions.TASKS, "stats"));
+    }
+
+    @Test
+    void etagsAreWeakAndQualified() {
+        assertThat(versions.etag(userId, CollectionVersions.SESSIONS, "2025-03-14"))
+                .startsWith("W/\"")
+                .endsWith("-sessions-0-2025-03-14\"");
+    }
+}
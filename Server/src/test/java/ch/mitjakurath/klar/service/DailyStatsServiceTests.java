@@ -0,0 +1,131 @@
+package ch.mitjakurath.klar.service;
+
+import ch.mitjakurath.klar.MongoTestSupport;
+import ch.mitjakurath.klar.model.DailyUserStats;
+import ch.mitjakurath.klar.model.PomodoroSession;
+import ch.mitjakurath.klar.model.Task;
+import ch.mitjakurath.klar.repository.DailyUserStatsRepository;
+import ch.mitjakurath.klar.repository.PomodoroSessionRepository;
+import ch.mitjakurath.klar.repository.TaskRepository;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.function.BooleanSupplier;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DailyStatsServiceTests extends MongoTestSupport {
+
+    @Autowired
+    private DailyStatsService dailyStatsService;
+
+    @Autowired
+    private TaskService taskService;
+
+    @Autowired
+    private TaskRepository taskRepository;
+
+    @Autowired
+    private PomodoroSessionRepository sessionRepository;
+
+    @Autowired
+    private DailyUserStatsRepository statsRepository;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    private String userId;
+
+    @BeforeEach
+    void setUp() {
+        userId = newUserId();
+    }
+
+    @Test
+    void rebuildReplacesTheRollups() {
+        LocalDateTime earlier = LocalDateTime.now().minusMinutes(1);
+        for (int i = 0; i < 3; i++) {
+            Task task = new Task(userId, "Task " + i);
+            task.setPriority("high");
+            task.setCompleted(i == 0);
+            task.setCompletedAt(i == 0 ? earlier : null);
+            task.setUpdatedAt(earlier);
+            taskRepository.save(task);
+        }
+        PomodoroSession session = new PomodoroSession(userId, 25, "work");
+        session.setCompleted(true);
+        session.setUpdatedAt(earlier);
+        sessionRepository.save(session);
+        DailyUserStats stale = new DailyUserStats();
+        stale.setId(DailyUserStats.idOf(userId, "2000-01-01"));
+        stale.setUserId(userId);
+        stale.setDay("2000-01-01");
+        stale.setTasksCreated(7);
+        statsRepository.save(stale);
+
+        dailyStatsService.rebuild(userId);
+
+        DailyStatsService.TaskTotals totals = dailyStatsService.getTaskTotals(userId, LocalDate.now());
+        assertThat(totals.totalTasks()).isEqualTo(3);
+        assertThat(totals.completedTasks()).isEqualTo(1);
+        assertThat(totals.byPriority()).singleElement().satisfies(priority -> {
+            assertThat(priority.priority()).isEqualTo("high");
+            assertThat(priority.total()).isEqualTo(3);
+            assertThat(priority.completed()).isEqualTo(1);
+        });
+        LocalDate today = LocalDate.now();
+        assertThat(dailyStatsService.getFocusTime(userId, today, today).byType())
+                .singleElement().satisfies(type -> assertThat(type.minutes()).isEqualTo(25));
+        assertThat(statsRepository.findById(stale.getId())).isEmpty();
+        assertThat(dailyStatsService.isEnabled(userId)).isTrue();
+    }
+
+    @Test
+    void rebuildRacingAWriteIsRepeated() {
+        // stored but not yet counted, like a write whose increment is still in flight
+        taskRepository.save(new Task(userId, "Racing"));
+
+        dailyStatsService.rebuild(userId);
+
+        assertThat(dailyStatsService.isEnabled(userId)).isFalse();
+        awaitRepair();
+        assertThat(dailyStatsService.getTaskTotals(userId, LocalDate.now()).totalTasks()).isEqualTo(1);
+    }
+
+    @Test
+    void failedIncrementsAreRepaired() {
+        // an $inc on this field fails
+        mongoTemplate.save(new Document("_id", DailyUserStats.idOf(userId, DailyUserStats.TOTAL))
+                .append("userId", userId)
+                .append("day", DailyUserStats.TOTAL)
+                .append("totalTasks", "broken"), "daily_user_stats");
+
+        taskService.createTask(new Task(userId, "Counted later"));
+
+        assertThat(dailyStatsService.isEnabled(userId)).isFalse();
+        awaitRepair();
+        assertThat(dailyStatsService.getTaskTotals(userId, LocalDate.now()).totalTasks()).isEqualTo(1);
+    }
+
+    private void awaitRepair() {
+        await(() -> dailyStatsService.isEnabled(userId), Duration.ofSeconds(10));
+    }
+
+    private static void await(BooleanSupplier condition, Duration timeout) {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        assertThat(condition.getAsBoolean()).isTrue();
+    }
+}
@@ -0,0 +1,75 @@
+package ch.mitjakurath.klar.service;
+
+import ch.mitjakurath.klar.MongoTestSupport;
+import ch.mitjakurath.klar.model.PomodoroSession;
+import ch.mitjakurath.klar.repository.PomodoroSessionRepository;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PomodoroSessionServiceTests extends MongoTestSupport {
+
+    @Autowired
+    private PomodoroSessionService sessionService;
+
+    @Autowired
+    private PomodoroSessionRepository sessionRepository;
+
+    private String userId;
+
+    @BeforeEach
+    void setUp() {
+        assumeRealMongo();
+        userId = newUserId();
+    }
+
+    @Test
+    void completeSetsTheEndTime() {
+        PomodoroSession session = sessionService.startSession(userId, 25, "work", null);
+
+        PomodoroSession completed = sessionService.completeSession(session.getId(), userId).orElseThrow();
+
+        assertThat(completed.isCompleted()).isTrue();
+        assertThat(completed.getEndTime()).isEqualTo(completed.getUpdatedAt());
+        PomodoroSession stored = sessionRepository.findById(session.getId()).orElseThrow();
+        assertThat(stored.isCompleted()).isTrue();
+        assertThat(stored.getEndTime()).isEqualTo(completed.getEndTime());
+    }
+
+    @Test
+    void completeKeepsAnEndTimeWrittenBehind() {
+        PomodoroSession session = sessionService.startSession(userId, 25, "work", null);
+        LocalDateTime endTime = LocalDateTime.now().minusMinutes(1).truncatedTo(ChronoUnit.MILLIS);
+        session.setEndTime(endTime);
+        // possibly still pending in the write-behind buffer, which completing has to flush first
+        sessionService.updateSession(session);
+
+        PomodoroSession completed = sessionService.completeSession(session.getId(), userId).orElseThrow();
+
+        assertThat(completed.getEndTime()).isEqualTo(endTime);
+        assertThat(sessionRepository.findById(session.getId()).orElseThrow().getEndTime()).isEqualTo(endTime);
+    }
+
+    @Test
+    void completeIgnoresSessionsOfOtherUsers() {
+        PomodoroSession session = sessionService.startSession(userId, 25, "work", null);
+
+        assertThat(sessionService.completeSession(session.getId(), newUserId())).isEmpty();
+        assertThat(sessionRepository.findById(session.getId()).orElseThrow().isCompleted()).isFalse();
+    }
+
+    @Test
+    void completingTwiceCountsTheSessionOnce() {
+        PomodoroSession session = sessionService.startSession(userId, 25, "work", null);
+        sessionService.completeSession(session.getId(), userId);
+        sessionService.completeSession(session.getId(), userId);
+
+        Map<String, Object> stats = sessionService.getFocusTimeStats(userId, "today");
+        assertThat(stats).containsEntry("completedSessions", 1L).containsEntry("totalMinutes", 25);
+    }
+}
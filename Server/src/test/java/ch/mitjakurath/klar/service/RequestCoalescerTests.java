@@ -0,0 +1,100 @@
+package ch.mitjakurath.klar.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RequestCoalescerTests {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final RequestCoalescer coalescer = new RequestCoalescer(meterRegistry);
+
+    @Test
+    void sharesAComputationInFlight() throws Exception {
+        AtomicInteger computations = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Integer> first = CompletableFuture.supplyAsync(() -> coalescer.coalesce("stats", "user", () -> {
+            computations.incrementAndGet();
+            await(release);
+            return 42;
+        }));
+        awaitCount("computed", 1);
+
+        CompletableFuture<Integer> second = CompletableFuture.supplyAsync(
+                () -> coalescer.coalesce("stats", "user", computations::incrementAndGet));
+        awaitCount("shared", 1);
+        release.countDown();
+
+        assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo(42);
+        assertThat(second.get(5, TimeUnit.SECONDS)).isEqualTo(42);
+        assertThat(computations).hasValue(1);
+    }
+
+    @Test
+    void computesAgainOnceTheFlightHasLanded() {
+        AtomicInteger computations = new AtomicInteger();
+
+        coalescer.coalesce("stats", "user", computations::incrementAndGet);
+        int result = coalescer.coalesce("stats", "user", computations::incrementAndGet);
+
+        assertThat(result).isEqualTo(2);
+        assertThat(count("computed")).isEqualTo(2);
+    }
+
+    @Test
+    void keepsKeysApart() {
+        assertThat(coalescer.coalesce("stats", "user", () -> "user")).isEqualTo("user");
+        assertThat(coalescer.coalesce("stats", "other", () -> "other")).isEqualTo("other");
+        assertThat(coalescer.coalesce("focus", "user", () -> "focus")).isEqualTo("focus");
+    }
+
+    @Test
+    void sharesFailures() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Object> first = CompletableFuture.supplyAsync(() -> coalescer.coalesce("stats", "user", () -> {
+            await(release);
+            throw new IllegalStateException("failed");
+        }));
+        awaitCount("computed", 1);
+
+        CompletableFuture<Object> second = CompletableFuture.supplyAsync(
+                () -> coalescer.coalesce("stats", "user", () -> "not computed"));
+        awaitCount("shared", 1);
+        release.countDown();
+
+        assertThat(first).failsWithin(5, TimeUnit.SECONDS);
+        assertThat(second).failsWithin(5, TimeUnit.SECONDS)
+                .withThrowableOfType(ExecutionException.class)
+                .havingCause()
+                .isInstanceOf(IllegalStateException.class)
+                .withMessage("failed");
+        assertThat(coalescer.coalesce("stats", "user", () -> "recomputed")).isEqualTo("recomputed");
+    }
+
+    private double count(String outcome) {
+        var counter = meterRegistry.find("klar.requests.coalesced").tag("outcome", outcome).counter();
+        return counter == null ? 0 : counter.count();
+    }
+
+    private void awaitCount(String outcome, int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (count(outcome) < expected && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertThat(count(outcome)).isEqualTo(expected);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
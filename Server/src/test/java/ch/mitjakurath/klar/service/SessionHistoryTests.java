@@ -0,0 +1,181 @@
+package ch.mitjakurath.klar.service;
+
+import ch.mitjakurath.klar.MongoTestSupport;
+import ch.mitjakurath.klar.model.CompletedSession;
+import ch.mitjakurath.klar.model.PomodoroSession;
+import ch.mitjakurath.klar.repository.CompletedSessionRepository;
+import ch.mitjakurath.klar.repository.PomodoroSessionRepository;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIf;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.spy;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+// the history is a time-series collection, which the in-memory server cannot create
+@EnabledIf(value = "ch.mitjakurath.klar.MongoTestSupport#isRealMongo", disabledReason = "needs a MongoDB container")
+class SessionHistoryTests extends MongoTestSupport {
+
+    @Autowired
+    private PomodoroSessionService sessionService;
+
+    @Autowired
+    private PomodoroSessionRepository sessionRepository;
+
+    @Autowired
+    private CompletedSessionRepository historyRepository;
+
+    @Autowired
+    private SessionHistory sessionHistory;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    private String userId;
+
+    @DynamicPropertySource
+    static void historyProperties(DynamicPropertyRegistry registry) {
+        registry.add("app.sessions.history.enabled", () -> true);
+        // so stats are read from the history rather than the rollups
+        registry.add("app.stats.rollups.enabled", () -> false);
+    }
+
+    @BeforeEach
+    void setUp() throws InterruptedException {
+        userId = newUserId();
+        // migrated on startup
+        long deadline = System.nanoTime() + 30_000_000_000L;
+        while (!sessionHistory.isReady() && System.nanoTime() < deadline) {
+            Thread.sleep(50);
+        }
+        assertThat(sessionHistory.isReady()).isTrue();
+    }
+
+    @Test
+    void completedSessionsAreReadFromTheHistory() {
+        PomodoroSession completed = sessionService.startSession(userId, 25, "work", null);
+        sessionService.completeSession(completed.getId(), userId);
+        PomodoroSession running = sessionService.startSession(userId, 50, "work", null);
+        // so it can only come from the history
+        sessionRepository.deleteById(completed.getId());
+
+        assertThat(sessionService.getTodaySessions(userId))
+                .extracting(PomodoroSession::getId, PomodoroSession::isCompleted)
+                .containsExactlyInAnyOrder(tuple(running.getId(), false), tuple(completed.getId(), true));
+        Map<String, Object> stats = sessionService.getFocusTimeStats(userId, "today");
+        assertThat(stats.get("totalMinutes")).isEqualTo(25);
+        assertThat(stats.get("completedSessions")).isEqualTo(1L);
+    }
+
+    @Test
+    void editingACompletedSessionReplacesItsEntry() {
+        PomodoroSession session = sessionService.startSession(userId, 25, "work", null);
+        sessionService.completeSession(session.getId(), userId);
+        PomodoroSession edited = sessionRepository.findById(session.getId()).orElseThrow();
+        edited.setDuration(30);
+
+        sessionService.updateSession(edited);
+
+        assertThat(entries()).singleElement().satisfies(entry -> assertThat(entry.getDuration()).isEqualTo(30));
+    }
+
+    @Test
+    void unchangedSessionsKeepTheirEntry() {
+        PomodoroSession session = sessionService.startSession(userId, 25, "work", null);
+        sessionService.completeSession(session.getId(), userId);
+        CompletedSession entry = entries().get(0);
+        PomodoroSession stored = sessionRepository.findById(session.getId()).orElseThrow();
+
+        SessionHistory.Changes changes = sessionHistory.changes().removeSession(stored);
+        stored.setUpdatedAt(stored.getUpdatedAt().plusSeconds(1));
+        changes.addSession(stored).apply();
+
+        assertThat(entries()).extracting(CompletedSession::getId).containsExactly(entry.getId());
+    }
+
+    @Test
+    void migrationStopsWhereTheFirstInstanceStartedWriting() throws InterruptedException {
+        resetMigration();
+        PomodoroSession old = sessionRepository.save(completedSession(LocalDateTime.now().minusMinutes(1)));
+        SessionHistory first = new SessionHistory(mongoTemplate, historyRepository, true);
+        first.createCollection();
+        Thread.sleep(10);
+        // written by the first instance, so it is already in the history
+        PomodoroSession live = sessionRepository.save(completedSession(LocalDateTime.now()));
+        first.changes().addSession(live).apply();
+        Thread.sleep(10);
+        SessionHistory second = new SessionHistory(mongoTemplate, historyRepository, true);
+        second.createCollection();
+
+        second.migrate();
+
+        assertThat(second.isReady()).isTrue();
+        assertThat(entries()).extracting(CompletedSession::getSessionId)
+                .containsExactlyInAnyOrder(old.getId(), live.getId());
+    }
+
+    @Test
+    void migrationReplacesSessionsChangedWhileCopying() {
+        resetMigration();
+        PomodoroSession changed = sessionRepository.save(completedSession(LocalDateTime.now().minusMinutes(1)));
+        SessionHistory live = new SessionHistory(mongoTemplate, historyRepository, true);
+        live.createCollection();
+        MongoTemplate migratingTemplate = spy(mongoTemplate);
+        SessionHistory migrating = new SessionHistory(migratingTemplate, historyRepository, true);
+        migrating.createCollection();
+        AtomicBoolean edited = new AtomicBoolean();
+        doAnswer(invocation -> {
+            if (edited.compareAndSet(false, true)) {
+                // edited on the other instance after the migration read it, before its copy is stored
+                PomodoroSession stored = sessionRepository.findById(changed.getId()).orElseThrow();
+                SessionHistory.Changes changes = live.changes().removeSession(stored);
+                stored.setDuration(30);
+                stored.setUpdatedAt(LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS));
+                sessionRepository.save(stored);
+                changes.addSession(stored).apply();
+            }
+            return invocation.callRealMethod();
+        }).when(migratingTemplate).insert(anyCollection(), eq(CompletedSession.class));
+
+        migrating.migrate();
+
+        assertThat(edited).isTrue();
+        assertThat(entries()).singleElement().satisfies(entry -> assertThat(entry.getDuration()).isEqualTo(30));
+    }
+
+    private PomodoroSession completedSession(LocalDateTime updatedAt) {
+        PomodoroSession session = new PomodoroSession(userId, 25, "work");
+        session.setCompleted(true);
+        session.setEndTime(updatedAt);
+        session.setUpdatedAt(updatedAt.truncatedTo(ChronoUnit.MILLIS));
+        return session;
+    }
+
+    private List<CompletedSession> entries() {
+        LocalDateTime now = LocalDateTime.now();
+        return historyRepository.findByUserIdAndStartTimeBetweenOrderByStartTimeDesc(
+                userId, now.minusDays(1), now.plusDays(1));
+    }
+
+    /**
+     * Lets the next instance migrate again, as after dropping the migration document.
+     */
+    private void resetMigration() {
+        mongoTemplate.remove(query(where("_id").is("session-history")), "migrations");
+    }
+}
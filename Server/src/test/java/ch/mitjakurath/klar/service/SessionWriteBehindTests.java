@@ -0,0 +1,140 @@
+package ch.mitjakurath.klar.service;
+
+import ch.mitjakurath.klar.MongoTestSupport;
+import ch.mitjakurath.klar.model.PomodoroSession;
+import ch.mitjakurath.klar.repository.PomodoroSessionRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SessionWriteBehindTests extends MongoTestSupport {
+
+    @Autowired
+    private PomodoroSessionService sessionService;
+
+    @Autowired
+    private PomodoroSessionRepository sessionRepository;
+
+    @Autowired
+    private DailyStatsService dailyStatsService;
+
+    @Autowired
+    private SessionHistory sessionHistory;
+
+    @Autowired
+    private CollectionVersions versions;
+
+    @Autowired
+    private UserEventBus eventBus;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private SessionWriteBehind writeBehind;
+    private String userId;
+
+    @BeforeEach
+    void setUp() {
+        userId = newUserId();
+        // flushed by the tests only
+        writeBehind = new SessionWriteBehind(sessionRepository, dailyStatsService, sessionHistory, versions, eventBus,
+                meterRegistry, true, Duration.ofHours(1), 10_000, 10_000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        writeBehind.shutdown();
+    }
+
+    @Test
+    void repeatedUpdatesAreCoalesced() {
+        PomodoroSession session = sessionService.startSession(userId, 25, "work", null);
+
+        for (int duration = 20; duration <= 22; duration++) {
+            writeBehind.write(update(session, duration));
+        }
+
+        assertThat(writeBehind.pending(session.getId())).hasValueSatisfying(
+                pending -> assertThat(pending.getDuration()).isEqualTo(22));
+        assertThat(sessionRepository.findById(session.getId()).orElseThrow().getDuration()).isEqualTo(25);
+        assertThat(meterRegistry.counter("klar.sessions.write-behind.coalesced").count()).isEqualTo(2);
+
+        writeBehind.flush();
+
+        assertThat(writeBehind.pending(session.getId())).isEmpty();
+        assertThat(sessionRepository.findById(session.getId()).orElseThrow().getDuration()).isEqualTo(22);
+    }
+
+    @Test
+    void shutdownFlushesPendingUpdates() {
+        PomodoroSession session = sessionService.startSession(userId, 25, "work", null);
+        writeBehind.write(update(session, 20));
+
+        writeBehind.shutdown();
+
+        assertThat(sessionRepository.findById(session.getId()).orElseThrow().getDuration()).isEqualTo(20);
+        // later updates are written through
+        writeBehind.write(update(session, 15));
+        assertThat(sessionRepository.findById(session.getId()).orElseThrow().getDuration()).isEqualTo(15);
+    }
+
+    @Test
+    void flushDoesNotReopenASessionCompletedElsewhere() {
+        PomodoroSession session = sessionService.startSession(userId, 25, "work", null);
+        writeBehind.write(update(session, 20));
+        // completed by another instance, which counted it
+        PomodoroSession completed = update(session, 25);
+        completed.setCompleted(true);
+        completed.setEndTime(completed.getUpdatedAt());
+        sessionRepository.save(completed);
+        dailyStatsService.changes().removeSession(session).addSession(completed).apply();
+
+        writeBehind.flush();
+
+        PomodoroSession stored = sessionRepository.findById(session.getId()).orElseThrow();
+        assertThat(stored.isCompleted()).isTrue();
+        assertThat(stored.getDuration()).isEqualTo(25);
+        LocalDate today = LocalDate.now();
+        assertThat(dailyStatsService.getFocusTime(userId, today, today).byType())
+                .singleElement().satisfies(type -> assertThat(type.minutes()).isEqualTo(25));
+    }
+
+    @Test
+    void flushDoesNotStoreOverANewerVersion() {
+        PomodoroSession session = sessionService.startSession(userId, 25, "work", null);
+        PomodoroSession older = update(session, 20);
+        older.setUpdatedAt(older.getUpdatedAt().minusSeconds(1));
+        writeBehind.write(older);
+        sessionRepository.save(update(session, 15));
+
+        writeBehind.flush();
+
+        assertThat(sessionRepository.findById(session.getId()).orElseThrow().getDuration()).isEqualTo(15);
+    }
+
+    @Test
+    void flushDoesNotRestoreADeletedSession() {
+        PomodoroSession session = sessionService.startSession(userId, 25, "work", null);
+        writeBehind.write(update(session, 20));
+        sessionRepository.deleteById(session.getId());
+
+        writeBehind.flush();
+
+        assertThat(sessionRepository.findById(session.getId())).isEmpty();
+    }
+
+    private PomodoroSession update(PomodoroSession session, int duration) {
+        PomodoroSession update = new PomodoroSession(userId, duration, session.getType());
+        update.setId(session.getId());
+        update.setStartTime(session.getStartTime());
+        update.setCreatedAt(session.getCreatedAt());
+        update.setUpdatedAt(LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS));
+        return update;
+    }
+}
@@ -0,0 +1,96 @@
+package ch.mitjakurath.klar.service;
+
+import ch.mitjakurath.klar.MongoTestSupport;
+import ch.mitjakurath.klar.dto.SyncResponse;
+import ch.mitjakurath.klar.model.Task;
+import ch.mitjakurath.klar.repository.TaskRepository;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+class SyncServiceTests extends MongoTestSupport {
+
+    @Autowired
+    private SyncService syncService;
+
+    @Autowired
+    private TaskService taskService;
+
+    @Autowired
+    private TaskRepository taskRepository;
+
+    @Value("${app.sync.max-changes}")
+    private int maxChanges;
+
+    private String userId;
+
+    @BeforeEach
+    void setUp() {
+        userId = newUserId();
+    }
+
+    @Test
+    void pagesThroughMoreChangesThanFitInOneResponse() {
+        // a full sync backfills updatedAt with an update pipeline
+        assumeRealMongo();
+        // e.g. written by one batch, so they share their modification time
+        LocalDateTime updatedAt = LocalDateTime.now().minusMinutes(1).truncatedTo(ChronoUnit.MILLIS);
+        List<Task> tasks = new ArrayList<>();
+        for (int i = 0; i < 2 * maxChanges + 1; i++) {
+            Task task = new Task(userId, "Task " + i);
+            task.setUpdatedAt(updatedAt);
+            tasks.add(task);
+        }
+        taskRepository.saveAll(tasks);
+
+        Set<String> synced = new HashSet<>();
+        String token = null;
+        int responses = 0;
+        SyncResponse response;
+        do {
+            response = syncService.sync(userId, token);
+            response.tasks().forEach(task -> synced.add(task.getId()));
+            token = response.token();
+            responses++;
+        } while (response.hasMore() && responses < 10);
+
+        assertThat(response.hasMore()).isFalse();
+        assertThat(responses).isEqualTo(3);
+        assertThat(synced).hasSize(tasks.size());
+    }
+
+    @Test
+    void returnsChangesAndDeletionsSinceTheToken() {
+        assumeRealMongo();
+        Task unchanged = new Task(userId, "Unchanged");
+        unchanged.setUpdatedAt(LocalDateTime.now().minusMinutes(1));
+        taskRepository.save(unchanged);
+        Task deleted = new Task(userId, "Deleted");
+        deleted.setUpdatedAt(LocalDateTime.now().minusMinutes(1));
+        taskRepository.save(deleted);
+        String token = syncService.sync(userId, null).token();
+
+        taskService.deleteTask(deleted.getId());
+        Task created = taskService.createTask(new Task(userId, "Created"));
+        SyncResponse response = syncService.sync(userId, token);
+
+        assertThat(response.tasks()).extracting(Task::getId).containsExactly(created.getId());
+        assertThat(response.deletedTasks()).containsExactly(deleted.getId());
+        assertThat(response.reset()).isFalse();
+    }
+
+    @Test
+    void rejectsMalformedTokens() {
+        assertThatIllegalArgumentException().isThrownBy(() -> syncService.sync(userId, "not a token"));
+    }
+}
@@ -0,0 +1,230 @@
+package ch.mitjakurath.klar.service;
+
+import ch.mitjakurath.klar.MongoTestSupport;
+import ch.mitjakurath.klar.dto.CursorPage;
+import ch.mitjakurath.klar.dto.TaskBatchRequest;
+import ch.mitjakurath.klar.dto.TaskBatchResult;
+import ch.mitjakurath.klar.dto.TaskRequest;
+import ch.mitjakurath.klar.model.Task;
+import ch.mitjakurath.klar.model.Tombstone;
+import ch.mitjakurath.klar.repository.ChangeCursor;
+import ch.mitjakurath.klar.repository.PageCursor;
+import ch.mitjakurath.klar.repository.TaskRepository;
+import ch.mitjakurath.klar.repository.TombstoneRepository;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TaskServiceTests extends MongoTestSupport {
+
+    @Autowired
+    private TaskService taskService;
+
+    @Autowired
+    private TaskRepository taskRepository;
+
+    @Autowired
+    private TombstoneRepository tombstoneRepository;
+
+    @Autowired
+    private DailyStatsService dailyStatsService;
+
+    private String userId;
+
+    @BeforeEach
+    void setUp() {
+        userId = newUserId();
+    }
+
+    @Test
+    void toggleCompletesAnOpenTask() {
+        assumeRealMongo();
+        Task task = taskService.createTask(new Task(userId, "Write tests"));
+
+        Task toggled = taskService.toggleTaskCompletion(task.getId(), userId).orElseThrow();
+
+        assertThat(toggled.isCompleted()).isTrue();
+        assertThat(toggled.getCompletedAt()).isEqualTo(toggled.getUpdatedAt());
+        Task stored = taskRepository.findById(task.getId()).orElseThrow();
+        assertThat(stored.isCompleted()).isTrue();
+        assertThat(stored.getCompletedAt()).isEqualTo(toggled.getCompletedAt());
+        assertThat(stored.getUpdatedAt()).isEqualTo(toggled.getUpdatedAt());
+    }
+
+    @Test
+    void toggleReopensACompletedTask() {
+        assumeRealMongo();
+        Task task = taskService.createTask(new Task(userId, "Write tests"));
+        taskService.toggleTaskCompletion(task.getId(), userId);
+
+        Task toggled = taskService.toggleTaskCompletion(task.getId(), userId).orElseThrow();
+
+        assertThat(toggled.isCompleted()).isFalse();
+        assertThat(toggled.getCompletedAt()).isNull();
+        Task stored = taskRepository.findById(task.getId()).orElseThrow();
+        assertThat(stored.isCompleted()).isFalse();
+        assertThat(stored.getCompletedAt()).isNull();
+    }
+
+    @Test
+    void toggleIgnoresTasksOfOtherUsers() {
+        assumeRealMongo();
+        Task task = taskService.createTask(new Task(userId, "Write tests"));
+
+        assertThat(taskService.toggleTaskCompletion(task.getId(), newUserId())).isEmpty();
+        assertThat(taskRepository.findById(task.getId()).orElseThrow().isCompleted()).isFalse();
+    }
+
+    @Test
+    void concurrentTogglesKeepTheRollupsInStep() throws Exception {
+        assumeRealMongo();
+        Task task = taskService.createTask(new Task(userId, "Write tests"));
+
+        // each toggle flips the stored state atomically, so an odd number leaves the task completed
+        int toggles = 21;
+        List<Future<?>> results = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(8)) {
+            for (int i = 0; i < toggles; i++) {
+                results.add(executor.submit(() -> taskService.toggleTaskCompletion(task.getId(), userId)));
+            }
+        }
+        for (Future<?> result : results) {
+            result.get();
+        }
+
+        assertThat(taskRepository.findById(task.getId()).orElseThrow().isCompleted()).isTrue();
+        DailyStatsService.TaskTotals totals = dailyStatsService.getTaskTotals(userId, LocalDate.now());
+        assertThat(totals.totalTasks()).isEqualTo(1);
+        assertThat(totals.completedTasks()).isEqualTo(1);
+    }
+
+    @Test
+    void pagesWalkTasksCreatedAtTheSameTime() {
+        LocalDateTime createdAt = LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+        Set<String> ids = new HashSet<>();
+        for (int i = 0; i < 5; i++) {
+            Task task = new Task(userId, "Task " + i);
+            task.setCreatedAt(createdAt);
+            ids.add(taskService.createTask(task).getId());
+        }
+
+        List<String> listed = new ArrayList<>();
+        PageCursor after = null;
+        CursorPage<Task> page;
+        do {
+            page = taskService.getTasksPage(userId, after, 2, null, false);
+            page.items().forEach(task -> listed.add(task.getId()));
+            after = page.nextCursor() == null ? null : PageCursor.decode(page.nextCursor());
+        } while (after != null);
+
+        assertThat(listed).hasSize(5).containsExactlyInAnyOrderElementsOf(ids);
+        assertThat(listed).isSortedAccordingTo(Comparator.reverseOrder());
+    }
+
+    @Test
+    void pagesOnlyHoldTheRequestedFields() {
+        Task task = new Task(userId, "Write tests");
+        task.setDescription("with sparse fields");
+        taskService.createTask(task);
+
+        Task listed = taskService.getTasksPage(userId, null, 10, Set.of("title"), false).items().getFirst();
+
+        assertThat(listed.getTitle()).isEqualTo("Write tests");
+        assertThat(listed.getDescription()).isNull();
+        assertThat(listed.getCreatedAt()).isNotNull();
+    }
+
+    @Test
+    void applyBatchReportsEveryOperation() {
+        Task kept = taskService.createTask(new Task(userId, "Kept"));
+        Task deleted = taskService.createTask(new Task(userId, "Deleted"));
+        Task other = taskService.createTask(new Task(userId, "Other"));
+        Task foreign = taskService.createTask(new Task(newUserId(), "Foreign"));
+
+        List<TaskBatchResult> results = taskService.applyBatch(userId, List.of(
+                new TaskBatchRequest.Operation("create", null, request("Created")),
+                new TaskBatchRequest.Operation("update", kept.getId(), request("Renamed")),
+                new TaskBatchRequest.Operation("delete", deleted.getId(), null),
+                new TaskBatchRequest.Operation("toggle", foreign.getId(), null),
+                new TaskBatchRequest.Operation("toggle", new ObjectId().toHexString(), null),
+                new TaskBatchRequest.Operation("create", null, request(" ")),
+                new TaskBatchRequest.Operation("archive", other.getId(), null)
+        ));
+
+        assertThat(results).extracting(TaskBatchResult::index).containsExactly(0, 1, 2, 3, 4, 5, 6);
+        assertThat(results).extracting(TaskBatchResult::status).containsExactly(
+                TaskBatchResult.Status.OK,
+                TaskBatchResult.Status.OK,
+                TaskBatchResult.Status.OK,
+                TaskBatchResult.Status.FORBIDDEN,
+                TaskBatchResult.Status.NOT_FOUND,
+                TaskBatchResult.Status.INVALID,
+                TaskBatchResult.Status.INVALID);
+        assertThat(taskRepository.findById(results.get(0).id()).orElseThrow().getTitle()).isEqualTo("Created");
+        assertThat(taskRepository.findById(kept.getId()).orElseThrow().getTitle()).isEqualTo("Renamed");
+        assertThat(taskRepository.findById(deleted.getId())).isEmpty();
+        assertThat(taskRepository.findById(foreign.getId()).orElseThrow().isCompleted()).isFalse();
+        assertThat(tombstoneRepository.findChanges(userId, ChangeCursor.from(LocalDateTime.now().minusHours(1)), 10))
+                .extracting(Tombstone::getEntityId).containsExactly(deleted.getId());
+        assertThat(dailyStatsService.getTaskTotals(userId, LocalDate.now()).totalTasks()).isEqualTo(3);
+    }
+
+    @Test
+    void applyBatchAppliesOperationsOnOneTaskInOrder() {
+        Task task = taskService.createTask(new Task(userId, "Write tests"));
+
+        List<TaskBatchResult> results = taskService.applyBatch(userId, List.of(
+                new TaskBatchRequest.Operation("toggle", task.getId(), null),
+                new TaskBatchRequest.Operation("update", task.getId(), request("Renamed")),
+                new TaskBatchRequest.Operation("toggle", task.getId(), null)
+        ));
+
+        assertThat(results).extracting(TaskBatchResult::status).containsOnly(TaskBatchResult.Status.OK);
+        Task stored = taskRepository.findById(task.getId()).orElseThrow();
+        assertThat(stored.getTitle()).isEqualTo("Renamed");
+        assertThat(stored.isCompleted()).isTrue();
+        assertThat(stored.getCreatedAt()).isEqualTo(task.getCreatedAt().truncatedTo(ChronoUnit.MILLIS));
+        DailyStatsService.TaskTotals totals = dailyStatsService.getTaskTotals(userId, LocalDate.now());
+        assertThat(totals.totalTasks()).isEqualTo(1);
+        assertThat(totals.completedTasks()).isEqualTo(1);
+    }
+
+    @Test
+    void todayCompletedCountsTheSameWithAndWithoutRollups() {
+        LocalDateTime now = LocalDateTime.now();
+        for (int i = 0; i < 2; i++) {
+            Task completedToday = new Task(userId, "Created yesterday");
+            completedToday.setCreatedAt(now.minusDays(1));
+            completedToday.setCompleted(true);
+            completedToday.setCompletedAt(now);
+            taskService.createTask(completedToday);
+        }
+        Task completedYesterday = new Task(userId, "Created today");
+        completedYesterday.setCompleted(true);
+        completedYesterday.setCompletedAt(now.minusDays(1));
+        taskService.createTask(completedYesterday);
+
+        LocalDateTime startOfDay = now.toLocalDate().atStartOfDay();
+        assertThat(taskRepository.aggregateTaskStats(userId, startOfDay, startOfDay.plusDays(1), now)
+                .todayCompletedCount()).isEqualTo(2);
+        assertThat(dailyStatsService.getTaskTotals(userId, now.toLocalDate()).todayCompleted()).isEqualTo(2);
+    }
+
+    private static TaskRequest request(String title) {
+        return new TaskRequest(title, null, false, null, null, null, null);
+    }
+}
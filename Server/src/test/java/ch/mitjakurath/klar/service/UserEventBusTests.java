@@ -0,0 +1,88 @@
+package ch.mitjakurath.klar.service;
+
+import ch.mitjakurath.klar.MongoTestSupport;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.http.codec.ServerSentEvent;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UserEventBusTests extends MongoTestSupport {
+
+    @Autowired
+    private UserEventBus eventBus;
+
+    @Autowired
+    private UserEventRelay eventRelay;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private String userId;
+
+    @BeforeEach
+    void setUp() {
+        userId = newUserId();
+    }
+
+    @Test
+    void publishReachesTheStreamsOfTheUser() throws Exception {
+        CompletableFuture<ServerSentEvent<Object>> received = nextEvent(eventBus, userId);
+        CompletableFuture<ServerSentEvent<Object>> other = nextEvent(eventBus, newUserId());
+
+        eventBus.publish(userId, "task.deleted", Map.of("id", "1"));
+
+        ServerSentEvent<Object> event = received.get(10, TimeUnit.SECONDS);
+        assertThat(event.event()).isEqualTo("task.deleted");
+        assertThat(event.data()).isEqualTo(Map.of("id", "1"));
+        assertThat(other).isNotDone();
+    }
+
+    @Test
+    void publishReachesStreamsOnOtherInstances() throws Exception {
+        assumeRealMongo();
+        // e.g. another instance behind the load balancer
+        UserEventRelay relay = new UserEventRelay(mongoTemplate, objectMapper, true, 1 << 20, Duration.ofSeconds(5));
+        relay.start();
+        awaitRunning(eventRelay);
+        awaitRunning(relay);
+        UserEventBus other = new UserEventBus(relay, new SimpleMeterRegistry(),
+                Duration.ofMinutes(1), Duration.ofMinutes(1), 16);
+        try {
+            CompletableFuture<ServerSentEvent<Object>> received = nextEvent(other, userId);
+
+            eventBus.publish(userId, "task.deleted", Map.of("id", "1"));
+
+            ServerSentEvent<Object> event = received.get(10, TimeUnit.SECONDS);
+            assertThat(event.event()).isEqualTo("task.deleted");
+            assertThat(event.data()).isEqualTo("{\"id\":\"1\"}");
+        } finally {
+            other.shutdown();
+            relay.shutdown();
+        }
+    }
+
+    private static void awaitRunning(UserEventRelay relay) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!relay.isRunning() && System.nanoTime() < deadline) {
+            Thread.sleep(50);
+        }
+        assertThat(relay.isRunning()).isTrue();
+    }
+
+    private static CompletableFuture<ServerSentEvent<Object>> nextEvent(UserEventBus bus, String userId) {
+        // skips the comment sent on connecting
+        return bus.subscribeFlux(userId).filter(event -> event.event() != null).next().toFuture();
+    }
+}
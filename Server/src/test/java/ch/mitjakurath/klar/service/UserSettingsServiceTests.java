@@ -0,0 +1,84 @@
+package ch.mitjakurath.klar.service;
+
+import ch.mitjakurath.klar.MongoTestSupport;
+import ch.mitjakurath.klar.model.UserSettings;
+import ch.mitjakurath.klar.repository.UserSettingsRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UserSettingsServiceTests extends MongoTestSupport {
+
+    @Autowired
+    private UserSettingsRepository settingsRepository;
+
+    @Autowired
+    private CollectionVersions versions;
+
+    private String userId;
+
+    @BeforeEach
+    void setUp() {
+        userId = newUserId();
+    }
+
+    @Test
+    void instancesServeSettingsWrittenElsewhere() {
+        // e.g. two instances behind the load balancer, with entries that would outlive the test
+        UserSettingsService one = instance(null);
+        UserSettingsService other = instance(null);
+        assertThat(one.getUserSettings(userId, etag()).getWorkDuration()).isEqualTo(25);
+
+        other.updateUserSettings(settings(50));
+
+        assertThat(one.getUserSettings(userId, etag()).getWorkDuration()).isEqualTo(50);
+    }
+
+    @Test
+    void instancesSharingACacheServeSettingsWrittenElsewhere() {
+        CacheManager shared = new ConcurrentMapCacheManager();
+        UserSettingsService one = instance(shared);
+        UserSettingsService other = instance(shared);
+        assertThat(one.getUserSettings(userId, etag()).getWorkDuration()).isEqualTo(25);
+        assertThat(other.getUserSettings(userId, etag()).getWorkDuration()).isEqualTo(25);
+
+        other.updateUserSettings(settings(50));
+
+        assertThat(one.getUserSettings(userId, etag()).getWorkDuration()).isEqualTo(50);
+    }
+
+    @Test
+    void cachedSettingsAreServedForTheirEtag() {
+        UserSettingsService service = instance(null);
+        String etag = etag();
+        UserSettings cached = service.getUserSettings(userId, etag);
+
+        assertThat(service.getUserSettings(userId, etag)).isSameAs(cached);
+    }
+
+    private UserSettingsService instance(CacheManager shared) {
+        StaticListableBeanFactory beans = new StaticListableBeanFactory();
+        if (shared != null) {
+            beans.addBean("cacheManager", shared);
+        }
+        return new UserSettingsService(settingsRepository, versions, new SimpleMeterRegistry(),
+                beans.getBeanProvider(CacheManager.class), 100, Duration.ofHours(1), shared != null ? "settings" : "");
+    }
+
+    private UserSettings settings(int workDuration) {
+        UserSettings settings = new UserSettings(userId);
+        settings.setWorkDuration(workDuration);
+        return settings;
+    }
+
+    private String etag() {
+        return versions.etag(userId, CollectionVersions.SETTINGS);
+    }
+}